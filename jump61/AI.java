@@ -1,8 +1,11 @@
 package jump61;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static jump61.Side.*;
 
@@ -14,11 +17,10 @@ import static jump61.Side.*;
 class AI extends Player {
     /**
      * A new player of GAME initially COLOR that chooses moves automatically.
-     * SEED provides a random-number seed used for choosing moves.
+     * SEED is ignored, since moves are chosen by search, not at random.
      */
     AI(Game game, Side color, long seed) {
         super(game, color);
-        _random = new Random(seed);
     }
 
 
@@ -33,184 +35,188 @@ class AI extends Player {
 
 
     /**
-     * Return a move after searching the game tree to DEPTH>0 moves
-     * from the current position. Assumes the game is not over.
+     * Return a move after searching the game tree from the current
+     * position within the time budget of the game (see Game.timeBudget),
+     * using the number of threads given by Game.threads.  Assumes the
+     * game is not over.
      */
     private int searchForMove() {
-        Board work = new Board(getBoard());
-
-        int value;
-        _random = new Random();
-        assert getSide() == work.whoseMove();
-        _foundMove = -1;
-        if (getSide() == RED) {
-            value = minMax(work, 3, true, 1,
-                    Integer.MIN_VALUE, Integer.MAX_VALUE);
-
-        } else {
-            value = minMax(work, 3, true, -1,
-                    Integer.MIN_VALUE, Integer.MAX_VALUE);
+        Board board = getBoard();
+        assert getSide() == board.whoseMove();
+        return findMove(board, getGame().threads(),
+                        TranspositionTable.MAX_DEPTH,
+                        getGame().timeBudget() * 1_000_000L);
+    }
 
+    /**
+     * Return a move for the player to move on BOARD, which is not over,
+     * found by THREADS threads searching BOARD at once for at most
+     * BUDGET nanoseconds (Lazy SMP).  Each thread has its own Searcher,
+     * and all share the game's transposition table, through which they
+     * pass on what they find.  The main thread (the caller) searches by
+     * iterative deepening (see Searcher.iterate) to depth 1, then 2, and
+     * so on, until half of BUDGET is spent, a win or loss is certain, or
+     * the depth reaches MAXDEPTH.  The other threads do the same
+     * starting at depth 1 or 2, alternately, so that they tend to be
+     * searching different depths, until the main thread finishes or one
+     * of them reaches MAXDEPTH.  Searches still running when the whole
+     * budget is spent are abandoned.  The move returned is that of the
+     * deepest completed search, preferring the main thread's.  The other
+     * threads come from a pool (see helpers) kept from move to move.
+     */
+    int findMove(Board board, int threads, int maxDepth, long budget) {
+        TranspositionTable table = getGame().transpositionTable();
+        table.newSearch();
+        if (_searchers == null || _searchers.length != threads) {
+            _searchers = new Searcher[threads];
+            for (int i = 0; i < threads; i += 1) {
+                _searchers[i] = new Searcher();
+            }
+        }
+        long start = System.nanoTime();
+        AtomicBoolean stop = new AtomicBoolean();
+        for (Searcher searcher : _searchers) {
+            searcher.prepare(board, table, start + budget, stop);
+        }
+        Future<?>[] helpers = new Future<?>[threads - 1];
+        for (int i = 1; i < threads; i += 1) {
+            Searcher helper = _searchers[i];
+            int firstDepth = 1 + i % 2;
+            helpers[i - 1] = helpers(threads - 1).submit(
+                () -> helper.iterate(firstDepth, maxDepth, start + budget));
+        }
+        _searchers[0].iterate(1, maxDepth, start + budget / 2);
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException excp) {
+                throw new GameException("search interrupted");
+            } catch (ExecutionException excp) {
+                throw new GameException("search failed: " + excp.getCause());
+            }
         }
-        if (_foundMove == -1) {
+        _result = _searchers[0];
+        for (Searcher searcher : _searchers) {
+            if (searcher.depth() > _result.depth()) {
+                _result = searcher;
+            }
+        }
+        int move = _result.move();
+        if (move == -1) {
+            move = board.nextPlayable(board.whoseMove(), 0);
+        }
+        if (move == -1) {
             throw new GameException("Found move has returned -1, this is bad.");
-        } else if (_foundMove == -3) {
-            throw new GameException("Best move is never initialized");
         }
-        return _foundMove;
+        return move;
     }
 
     /**
-     * The main method serves to test AI methods.
-     *
-     * @param args ARGS
+     * Return a pool of COUNT daemon threads for the helper searches of
+     * findMove, reusing my last pool if it has COUNT threads, so that
+     * searching a move does not start new threads.  Threads idle for
+     * HELPER_KEEP_ALIVE seconds end, so that an AI no longer playing
+     * holds none.
      */
-    public static void main(String[] args) {
-        Board B = new Board(2);
-        System.out.println(B.toString());
-        ArrayList<Integer> redPossibleMoves = validMoves(B, RED);
-        ArrayList<Integer> bluePossibleMoves = validMoves(B, BLUE);
-        ArrayList<Board> redChildBoards = nextBoardStates(B,
-                RED, redPossibleMoves);
-        HashMap<Board, Integer> redBoardMovePairings = new HashMap<>();
-        assert redPossibleMoves.equals(bluePossibleMoves);
-        System.out.println("Possible moves for red:");
-        System.out.println(redPossibleMoves);
-        System.out.println("Since there are " + redPossibleMoves.size()
-                + " moves for red, we can make " + redChildBoards.size()
-                + " child boards");
-        System.out.println("Future boards states for red:");
-
-        for (int i = 0; i < redPossibleMoves.size(); i++) {
-            redBoardMovePairings.put(redChildBoards.get(i),
-                    redPossibleMoves.get(i));
+    private ThreadPoolExecutor helpers(int count) {
+        if (_helpers == null || _helpers.getCorePoolSize() != count) {
+            if (_helpers != null) {
+                _helpers.shutdown();
+            }
+            _helpers = new ThreadPoolExecutor(
+                count, count, HELPER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "search helper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            _helpers.allowCoreThreadTimeOut(true);
         }
-        System.out.println(redBoardMovePairings.toString());
+        return _helpers;
+    }
 
+    /**
+     * Return the depth of the search whose move was chosen by the last
+     * call of getMove or findMove.
+     */
+    int depth() {
+        return _result.depth();
     }
 
     /**
-     * Exhaustively searches the board for valid moves, returns arraylist.
-     * of Boards that come from executing those validMoves SIDE BOARD
+     * Return the number of positions visited by all threads in the last
+     * call of getMove or findMove.
      */
-    private static ArrayList<Integer> validMoves(Board board, Side side) {
-        ArrayList<Integer> moves = new ArrayList<>();
-        assert (side == board.whoseMove());
-        for (int i = 0; i < board.size() * board.size(); i++) {
-            if (board.isLegal(side, i)) {
-                moves.add(i);
-            }
+    long nodes() {
+        long result = 0;
+        for (Searcher searcher : _searchers) {
+            result += searcher.nodes();
         }
-        return moves;
+        return result;
     }
 
     /**
-     * Uses your validMoves, and execute them, new board for each validMove.
-     * VALIDMOVES SIDE BOARD
-     *
-     * @return All possible board states that can result executing validMoves
+     * Return the number of searches of positions in the last call of
+     * getMove or findMove that were cut off (ended before all moves were
+     * tried).
      */
-    private static ArrayList<Board> nextBoardStates(
-            Board board, Side side, ArrayList<Integer> validMoves) {
-        ArrayList<Board> nextBoardStates = new ArrayList<>();
-        assert (side == board.whoseMove());
-        for (int i = 0; i < validMoves.size(); i++) {
-            board.addSpot(side, validMoves.get(i));
-            nextBoardStates.add(new Board(board));
-            board.undo();
+    long cutoffs() {
+        long result = 0;
+        for (Searcher searcher : _searchers) {
+            result += searcher.cutoffs();
         }
-        return nextBoardStates;
+        return result;
     }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _foundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _foundMove. If the game is over
-     * on BOARD, does not set _foundMove.
+     * Return the number of the cutoffs counted by cutoffs that happened
+     * after trying only the first move.  The ratio of this to cutoffs()
+     * measures the quality of move ordering.
      */
-    private int minMax(Board board, int depth, boolean saveMove,
-                       int sense, int alpha, int beta) {
-        int bestMove = 0 - 3;
-        int minMaxEval = -1;
-        ArrayList<Integer> possibleMoves;
-        ArrayList<Board> nextStates;
-        HashMap<Board, Integer> boardMovePairings;
-        if (depth == 0 || board.getWinner() != null) {
-            return staticEval(board, 0);
+    long firstMoveCutoffs() {
+        long result = 0;
+        for (Searcher searcher : _searchers) {
+            result += searcher.firstMoveCutoffs();
         }
-        if (sense == 1) {
-            minMaxEval = Integer.MIN_VALUE;
-            possibleMoves = validMoves(board, RED);
-            nextStates = nextBoardStates(board, RED, possibleMoves);
-            assert (possibleMoves.size() == nextStates.size());
-            boardMovePairings = new HashMap<>();
-            for (int i = 0; i < possibleMoves.size(); i++) {
-                boardMovePairings.put(nextStates.get(i), possibleMoves.get(i));
-            }
-            for (Board childBoard : nextStates) {
-                int eval = minMax(childBoard,
-                        depth - 1, false, -1, alpha, beta);
-                if (eval >= minMaxEval) {
-                    bestMove = boardMovePairings.get(childBoard);
-                }
-                minMaxEval = Math.max(minMaxEval, eval);
-                alpha = Math.max(alpha, eval);
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-        } else {
-            minMaxEval = Integer.MAX_VALUE;
-            possibleMoves = validMoves(board, BLUE);
-            nextStates = nextBoardStates(board, BLUE, possibleMoves);
-            boardMovePairings = new HashMap<>();
-            for (int i = 0; i < possibleMoves.size(); i++) {
-                boardMovePairings.put(nextStates.get(i), possibleMoves.get(i));
-            }
-            for (Board childBoard : nextStates) {
-                int eval = minMax(childBoard, depth - 1, false, 1, alpha, beta);
-                if (eval <= minMaxEval) {
-                    bestMove = boardMovePairings.get(childBoard);
-                }
-                minMaxEval = Math.min(minMaxEval, eval);
-                beta = Math.min(beta, eval);
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-        }
-        if (saveMove) {
-            _foundMove = bestMove;
-        }
-        return minMaxEval;
+        return result;
     }
 
     /**
-     * Return a heuristic estimate of the value of board position B.
-     * Use WINNINGVALUE to indicate a win for Red and -WINNINGVALUE to
-     * indicate a win for Blue.
+     * The main method serves to test AI methods.
+     *
+     * @param args ARGS
      */
-    private int staticEval(Board b, int winningValue) {
-        int value = 0;
-        if (b.getWinner() == RED) {
-            return Integer.MAX_VALUE;
-        } else if (b.getWinner() == BLUE) {
-            return Integer.MIN_VALUE;
+    public static void main(String[] args) {
+        Board B = new Board(2);
+        System.out.println(B.toString());
+        System.out.println("Future board states for red:");
+        for (int move = B.nextPlayable(RED, 0); move >= 0;
+             move = B.nextPlayable(RED, move + 1)) {
+            B.addSpot(RED, move);
+            System.out.printf("%d %d:%n%s%n", B.row(move), B.col(move), B);
+            B.undo();
         }
-        value = b.numOfSide(RED) - b.numOfSide(BLUE);
-        return value;
     }
 
     /**
-     * A random-number generator used for move selection.
+     * Seconds for which a helper thread may stay idle before it ends.
+     */
+    private static final long HELPER_KEEP_ALIVE = 60;
+
+    /**
+     * The threads running helper searches, or null if none have been
+     * needed.
+     */
+    private ThreadPoolExecutor _helpers;
+
+    /**
+     * The Searchers used by the last search, one per thread; the first
+     * is used by the calling thread.
      */
-    private Random _random;
+    private Searcher[] _searchers;
 
     /**
-     * Used to convey moves discovered by minMax.
+     * The Searcher whose move was chosen by the last search.
      */
-    private int _foundMove;
+    private Searcher _result;
 }
@@ -1,6 +1,9 @@
 package jump61;
 
 import static jump61.Side.*;
+import static jump61.TranspositionTable.*;
+
+import java.util.Random;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -15,4 +18,185 @@ public class AITest {
         Board test = new Board(4);
     }
 
+    @Test
+    public void testTableEntries() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = Zobrist.mix(1);
+        assertEquals("empty table hit", MISS, table.probe(key));
+        table.store(key, 5, LOWER, Integer.MIN_VALUE, (1 << 20) - 1);
+        long entry = table.probe(key);
+        assertNotEquals("stored entry missed", MISS, entry);
+        assertEquals(5, depth(entry));
+        assertEquals(LOWER, bound(entry));
+        assertEquals(Integer.MIN_VALUE, score(entry));
+        assertEquals((1 << 20) - 1, move(entry));
+        table.store(key, MAX_DEPTH + 10, EXACT, -7, -1);
+        entry = table.probe(key);
+        assertEquals(MAX_DEPTH, depth(entry));
+        assertEquals(EXACT, bound(entry));
+        assertEquals(-7, score(entry));
+        assertEquals(-1, move(entry));
+        assertEquals("wrong key hit", MISS, table.probe(key ^ 1));
+        assertEquals(4, table.probes());
+        assertEquals(2, table.hits());
+        table.clear();
+        assertEquals("cleared table hit", MISS, table.probe(key));
+    }
+
+    @Test
+    public void testTableReplacement() {
+        TranspositionTable table = new TranspositionTable(0);
+        assertEquals(WAYS, table.capacity());
+        for (int k = 0; k < WAYS; k += 1) {
+            table.store(Zobrist.mix(k), 10 + k, EXACT, k, k);
+        }
+        table.store(Zobrist.mix(WAYS), 1, UPPER, 0, 0);
+        assertEquals("shallowest entry kept", MISS,
+                     table.probe(Zobrist.mix(0)));
+        table.newSearch();
+        table.store(Zobrist.mix(WAYS + 1), 1, UPPER, 0, 0);
+        assertEquals("old shallow entry kept", MISS,
+                     table.probe(Zobrist.mix(WAYS)));
+        table.store(Zobrist.mix(WAYS + 2), 1, UPPER, 0, 0);
+        assertEquals("current shallow entry kept", MISS,
+                     table.probe(Zobrist.mix(WAYS + 1)));
+        for (int k = 1; k < WAYS; k += 1) {
+            assertNotEquals("old deep entry replaced", MISS,
+                            table.probe(Zobrist.mix(k)));
+        }
+        table.store(Zobrist.mix(1), 20, LOWER, 0, 0);
+        assertEquals("entry not updated in place", LOWER,
+                     bound(table.probe(Zobrist.mix(1))));
+        assertNotEquals("entry replaced by update", MISS,
+                        table.probe(Zobrist.mix(WAYS + 2)));
+    }
+
+    @Test
+    public void testTableSharing() throws InterruptedException {
+        TranspositionTable table = new TranspositionTable(0);
+        Thread[] threads = new Thread[4];
+        boolean[] bad = new boolean[threads.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int k = 0; k < 100000; k += 1) {
+                    long key = Zobrist.mix(k % 64);
+                    table.store(key, k % 64, EXACT, (int) key,
+                                (int) (key >>> 44));
+                    long entry = table.probe(Zobrist.mix((k + 1) % 64));
+                    if (entry != MISS) {
+                        long other = Zobrist.mix((k + 1) % 64);
+                        bad[id] |= score(entry) != (int) other
+                            || move(entry) != (int) (other >>> 44)
+                            || depth(entry) != (k + 1) % 64;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean b : bad) {
+            assertFalse("inconsistent entry read", b);
+        }
+    }
+
+    @Test
+    public void testTimeBudget() {
+        Game game = new Game(null, b -> { }, new TextReporter(), false);
+        game.setTimeBudget(100);
+        AI ai = new AI(game, RED, 0);
+        long start = System.nanoTime();
+        String[] move = ai.getMove().split(" ");
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("search overran its budget: " + millis + "ms",
+                   millis < 1000);
+        assertTrue("no search completed", ai.depth() >= 1);
+        assertTrue("no positions searched", ai.nodes() > 0);
+        assertTrue("illegal move",
+                   game.getBoard().isLegal(RED, Integer.parseInt(move[0]),
+                                           Integer.parseInt(move[1])));
+    }
+
+    @Test
+    public void testMoveOrdering() {
+        Board board = new Board(5);
+        Random rand = new Random(24);
+        for (int k = 0; k < 10; k += 1) {
+            BoardTest.playRandom(board, rand);
+        }
+        Game game = new Game(null, b -> { }, new TextReporter(), false);
+        AI ai = new AI(game, board.whoseMove(), 0);
+        ai.findMove(board, 1, 6, Long.MAX_VALUE / 4);
+        assertEquals("wrong depth", 6, ai.depth());
+        assertTrue("no cutoffs", ai.cutoffs() > 0);
+        assertTrue("first moves rarely cut off: " + ai.firstMoveCutoffs()
+                   + " of " + ai.cutoffs(),
+                   2 * ai.firstMoveCutoffs() > ai.cutoffs());
+    }
+
+    @Test
+    public void testSymmetricEntries() {
+        Board board = new Board(5);
+        Random rand = new Random(22);
+        for (int k = 0; k < 8; k += 1) {
+            BoardTest.playRandom(board, rand);
+        }
+        Board image = board.canonicalBoard();
+        assertNotEquals("position already canonical", board, image);
+        Game game = new Game(null, b -> { }, new TextReporter(), false);
+        AI ai = new AI(game, board.whoseMove(), 0);
+        int n = ai.findMove(board, 1, 3, Long.MAX_VALUE / 4);
+        long entry = game.transpositionTable().probe(
+            image.canonicalKey() ^ Zobrist.mix(-image.size()));
+        assertNotEquals("image not in table", MISS, entry);
+        assertEquals("move not mapped", board.toCanonical(n),
+                     image.fromCanonical(move(entry)));
+    }
+
+    @Test
+    public void testParallelSearch() {
+        Game game = new Game(null, b -> { }, new TextReporter(), false);
+        game.setTimeBudget(200);
+        game.setThreads(4);
+        AI ai = new AI(game, RED, 0);
+        String[] move = ai.getMove().split(" ");
+        assertTrue("no search completed", ai.depth() >= 1);
+        assertTrue("illegal move",
+                   game.getBoard().isLegal(RED, Integer.parseInt(move[0]),
+                                           Integer.parseInt(move[1])));
+        Board board = new Board(4);
+        int n = ai.findMove(board, 4, 5, Long.MAX_VALUE / 4);
+        assertEquals("wrong depth", 5, ai.depth());
+        assertTrue("illegal move", board.isLegal(RED, n));
+        int helpers = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            helpers += thread.getName().equals("search helper") ? 1 : 0;
+        }
+        assertTrue("helper threads not reused: " + helpers, helpers <= 3);
+    }
+
+    @Test(expected = GameException.class)
+    public void testBadTimeBudget() {
+        new Game(null, b -> { }, new TextReporter(), false).setTimeBudget(0);
+    }
+
+    @Test
+    public void testTableSize() {
+        Game game = new Game(null, b -> { }, new TextReporter(), false);
+        assertEquals(Defaults.TABLE_SIZE,
+                     game.transpositionTable().megabytes());
+        game.setTableSize(2);
+        assertEquals(2, game.transpositionTable().megabytes());
+        assertSame("table not kept", game.transpositionTable(),
+                   game.transpositionTable());
+    }
+
+    @Test(expected = GameException.class)
+    public void testBadTableSize() {
+        new Game(null, b -> { }, new TextReporter(), false)
+            .setTableSize(Defaults.MAX_TABLE_SIZE + 1);
+    }
+
 }
@@ -0,0 +1,741 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.Side.*;
+import static jump61.Square.INITIAL_CELL;
+import static jump61.Square.pack;
+import static jump61.Square.sideOrdinalOf;
+import static jump61.Square.spotsOf;
+
+/**
+ * A Board for sizes up to MAX_SIZE that represents its
+ * position as bit planes rather than an array of squares.  Each plane is
+ * a set of square numbers held in WORDS longs (bit n of the plane is bit
+ * n % 64 of word n / 64).  Two planes give the squares owned by RED and
+ * by BLUE, and four more hold the binary digits of the spot counts
+ * ("bit-sliced" counts), so that counting spots or squares of a color is
+ * a handful of Long.bitCount calls.
+ * <p>
+ * Cascades are resolved a wave at a time: all squares that jump in one
+ * round of the sequential engine in Board are processed together with
+ * shifts and masks, using bit-sliced addition for the spots they hand to
+ * their neighbors.  Board's engine processes squares one at a time from
+ * a queue, and in two situations the order matters: when a square that
+ * jumps in a wave receives enough spots from other squares in the same
+ * wave to be overfull again, and when the game is won partway through a
+ * wave.  Both are detected after the wave, in which case the move is
+ * replayed from its start one square at a time in exactly Board's order,
+ * so the two representations always produce the same positions.
+ * <p>
+ * A square of a BitBoard holds at most MAX_SPOTS spots.  BitBoards have
+ * none of the alternative cascade strategies of Board, and so reject
+ * the methods that select them.
+ *
+ * @author Bernie Miao
+ */
+class BitBoard extends Board {
+
+    /**
+     * The largest size of a BitBoard.
+     */
+    static final int MAX_SIZE = 10;
+
+    /**
+     * The most spots a square of a BitBoard can hold.
+     */
+    static final int MAX_SPOTS = 15;
+
+    /**
+     * An N x N board in initial configuration.  Requires
+     * 2 <= N <= MAX_SIZE.
+     */
+    BitBoard(int N) {
+        initialize(N);
+    }
+
+    /**
+     * A board whose initial contents are copied from BOARD0, but whose
+     * undo history is clear.
+     */
+    BitBoard(Board board0) {
+        this(board0.size());
+        copy(board0);
+    }
+
+    /**
+     * Set me to an empty N x N board with no undo history.
+     */
+    private void initialize(int N) {
+        if (N < 2 || N > MAX_SIZE) {
+            throw new GameException("BitBoard size out of range: " + N);
+        }
+        _size = N;
+        _geometry = Geometry.of(N);
+        _masks = MASKS[N];
+        _cells = new byte[N * N];
+        Arrays.fill(_planes, 0);
+        for (int w = 0; w < WORDS; w += 1) {
+            _planes[S0 * WORDS + w] = mask(ALL, w);
+        }
+        _numMoves = 0;
+        _historyTop = 0;
+        _keyValid = false;
+    }
+
+    @Override
+    int size() {
+        return _size;
+    }
+
+    @Override
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    @Override
+    Square get(int n) {
+        return Square.square(cell(n));
+    }
+
+    /**
+     * Returns the packed contents of all squares, as for Board.getCells.
+     * The result is recomputed from my planes on each call, and is
+     * overwritten by the next call.
+     */
+    @Override
+    byte[] getCells() {
+        for (int n = 0; n < _cells.length; n += 1) {
+            _cells[n] = (byte) cell(n);
+        }
+        return _cells;
+    }
+
+    /**
+     * Returns the playable squares of SIDE, as for Board.playable.  The
+     * result is recomputed from my planes on each call, and is
+     * overwritten by the next call.
+     */
+    @Override
+    long[] playable(Side side) {
+        int p = ownerPlane(side.opposite().ordinal()) * WORDS;
+        for (int w = 0; w < WORDS; w += 1) {
+            _playable[w] = mask(ALL, w) & ~_planes[p + w];
+        }
+        return _playable;
+    }
+
+    /**
+     * Returns the critical squares of SIDE, as for Board.critical.  The
+     * result is recomputed from my planes on each call, and is
+     * overwritten by the next call.
+     */
+    @Override
+    long[] critical(Side side) {
+        int p = ownerPlane(side.ordinal()) * WORDS;
+        for (int w = 0; w < WORDS; w += 1) {
+            _critical[w] = _planes[p + w]
+                & (mask(CAP2, w) & exactly(2, w)
+                   | mask(CAP3, w) & exactly(3, w)
+                   | mask(CAP4, w) & exactly(4, w));
+        }
+        return _critical;
+    }
+
+    @Override
+    int numCritical(Side side) {
+        long[] critical = critical(side);
+        int count = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            count += Long.bitCount(critical[w]);
+        }
+        return count;
+    }
+
+    @Override
+    int numCritical(Side side, int capacity) {
+        long[] critical = critical(side);
+        int count = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            count += Long.bitCount(critical[w]
+                                   & mask(CAP2 + capacity - 2, w));
+        }
+        return count;
+    }
+
+    /**
+     * Return word W of the set of squares holding exactly SPOTS spots.
+     */
+    private long exactly(int spots, int w) {
+        long result = -1L;
+        for (int i = 0; i < SPOT_PLANES; i += 1) {
+            long plane = _planes[i * WORDS + w];
+            result &= ((spots >>> i) & 1) != 0 ? plane : ~plane;
+        }
+        return result;
+    }
+
+    @Override
+    int numPieces() {
+        int num = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            for (int i = 0; i < SPOT_PLANES; i += 1) {
+                num += Long.bitCount(_planes[i * WORDS + w]) << i;
+            }
+        }
+        return num;
+    }
+
+    @Override
+    int numOfSide(Side side) {
+        if (side == WHITE) {
+            return _size * _size - numOfSide(RED) - numOfSide(BLUE);
+        }
+        int p = ownerPlane(side.ordinal()) * WORDS;
+        int count = 0;
+        for (int w = 0; w < WORDS; w += 1) {
+            count += Long.bitCount(_planes[p + w]);
+        }
+        return count;
+    }
+
+    @Override
+    long zobristKey() {
+        return symmetricKey(0);
+    }
+
+    @Override
+    long symmetricKey(int t) {
+        if (!_keyValid) {
+            Arrays.fill(_keys, 0);
+            for (int n = 0; n < _size * _size; n += 1) {
+                int cell = cell(n);
+                for (int u = 0; u < Geometry.SYMMETRIES; u += 1) {
+                    _keys[u] ^= Zobrist.key(_geometry.symmetric(u, n), cell);
+                }
+            }
+            _keyValid = true;
+        }
+        return _keys[t];
+    }
+
+    @Override
+    public int getNumMoves() {
+        return _numMoves;
+    }
+
+    @Override
+    void clear(int N) {
+        initialize(N);
+        announce();
+    }
+
+    @Override
+    void setContents(int N, byte[] cells) {
+        for (int n = 0; n < N * N; n += 1) {
+            checkSpots(spotsOf(cells[n]));
+        }
+        initialize(N);
+        for (int n = 0; n < N * N; n += 1) {
+            put(n, cells[n] & Square.CELL_MASK);
+        }
+        announce();
+    }
+
+    @Override
+    void copy(Board board) {
+        if (board.size() != size()) {
+            throw new GameException("BitBoard.copy() has encountered a "
+                    + "difference in game board size between dst board "
+                    + "and src board");
+        }
+        for (int n = 0; n < _size * _size; n += 1) {
+            checkSpots(board.get(n).getSpots());
+        }
+        for (int n = 0; n < _size * _size; n += 1) {
+            Square sq = board.get(n);
+            put(n, pack(sq.getSide(), sq.getSpots()));
+        }
+        _numMoves = 0;
+        _historyTop = 0;
+        _keyValid = false;
+    }
+
+    @Override
+    void addSpot(Side player, int n) {
+        saveHistory();
+        _numMoves += 1;
+        put(n, pack(player, spotsOf(cell(n)) + 1));
+        _keyValid = false;
+        _explosions = _depth = 0;
+        if (!waveJump(n, player.ordinal())) {
+            restoreHistory(_historyTop - 1);
+            put(n, pack(player, spotsOf(cell(n)) + 1));
+            _explosions = _depth = 0;
+            sequentialJump(n, player.ordinal());
+        }
+    }
+
+    /**
+     * I keep no log of changed squares, so the changes are found by
+     * comparing all squares before and after the move.
+     */
+    @Override
+    MoveDelta addSpot(Side player, int n, MoveDelta delta) {
+        byte[] before = getCells().clone();
+        addSpot(player, n);
+        byte[] after = getCells();
+        delta.start(_size, player, n);
+        for (int k = 0; k < after.length; k += 1) {
+            delta.add(k, before[k], after[k]);
+        }
+        delta.finish(_explosions, _depth);
+        return delta;
+    }
+
+    @Override
+    void set(int r, int c, int num, Side player) {
+        put(sqNum(r, c), pack(player, num));
+        _keyValid = false;
+        announce();
+    }
+
+    @Override
+    void undo() {
+        _historyTop -= 1;
+        restoreHistory(_historyTop);
+        _numMoves -= 1;
+        _keyValid = false;
+    }
+
+    /**
+     * My history entries have a small fixed size, so the limit LIMIT is
+     * ignored.
+     */
+    @Override
+    void setUndoLimit(int limit) {
+    }
+
+    @Override
+    void setWaveThreshold(int threshold) {
+        throw new GameException("BitBoard has no wave threshold");
+    }
+
+    @Override
+    void setCascadeCache(CascadeCache cache) {
+        throw new GameException("BitBoard has no cascade cache");
+    }
+
+    @Override
+    void setSpecialized(boolean on) {
+        throw new GameException("BitBoard has no cascade kernels");
+    }
+
+    /**
+     * Throw a GameException if a square cannot hold SPOTS spots.
+     */
+    private static void checkSpots(int spots) {
+        if (spots > MAX_SPOTS) {
+            throw GameException.error("too many spots for a BitBoard: %d"
+                                      + " (at most %d)", spots, MAX_SPOTS);
+        }
+    }
+
+    /**
+     * Resolve all jumping on this board, given that square #S, owned by
+     * the side with ordinal SIDE, is the only square that might be
+     * overfull, one wave at a time.  Returns false, leaving the board in
+     * an unspecified state, if the result might differ from that of
+     * processing squares one at a time (see the class comment).
+     */
+    private boolean waveJump(int S, int side) {
+        if (getWinner() != null || !overfull(S)) {
+            return true;
+        }
+        long[] wave = _wave, next = _next;
+        Arrays.fill(wave, 0);
+        wave[S >>> 6] = 1L << S;
+        int mine = ownerPlane(side) * WORDS,
+            theirs = ownerPlane(side == RED.ordinal()
+                                ? BLUE.ordinal() : RED.ordinal()) * WORDS;
+        while (true) {
+            spread(wave, _down, _size, ALL, true);
+            spread(wave, _up, _size, ALL, false);
+            spread(wave, _right, 1, NOT_FIRST_COL, true);
+            spread(wave, _left, 1, NOT_LAST_COL, false);
+            boolean more, won;
+            more = false;
+            won = true;
+            for (int w = 0; w < WORDS; w += 1) {
+                long e = wave[w], d = _down[w], u = _up[w],
+                    r = _right[w], l = _left[w];
+                long cap2 = mask(CAP2, w), cap3 = mask(CAP3, w),
+                    cap4 = mask(CAP4, w);
+
+                long a0 = d ^ u, a1 = d & u, b0 = r ^ l, b1 = r & l;
+                long c0 = a0 ^ b0, cy = a0 & b0;
+                long c1 = a1 ^ b1 ^ cy, c2 = (a1 & b1) | (cy & (a1 | b1));
+
+                long s0 = _planes[S0 * WORDS + w],
+                    s1 = _planes[S1 * WORDS + w],
+                    s2 = _planes[S2 * WORDS + w],
+                    s3 = _planes[S3 * WORDS + w];
+                long t0 = s0 ^ c0, k = s0 & c0;
+                long t1 = s1 ^ c1 ^ k;
+                k = (s1 & c1) | (k & (s1 | c1));
+                long t2 = s2 ^ c2 ^ k;
+                k = (s2 & c2) | (k & (s2 | c2));
+                long t3 = s3 ^ k;
+
+                long m0 = e & cap3, m1 = e & (cap2 | cap3), m2 = e & cap4;
+                s0 = t0 ^ m0;
+                k = ~t0 & m0;
+                s1 = t1 ^ m1 ^ k;
+                k = (~t1 & (m1 | k)) | (m1 & k);
+                s2 = t2 ^ m2 ^ k;
+                k = (~t2 & (m2 | k)) | (m2 & k);
+                s3 = t3 ^ k;
+                _planes[S0 * WORDS + w] = s0;
+                _planes[S1 * WORDS + w] = s1;
+                _planes[S2 * WORDS + w] = s2;
+                _planes[S3 * WORDS + w] = s3;
+
+                long receivers = d | u | r | l, touched = e | receivers;
+                _planes[mine + w] |= touched;
+                _planes[theirs + w] &= ~touched;
+
+                long over = overfull(s0, s1, s2, s3, cap2, cap3, cap4);
+                if ((over & e) != 0) {
+                    return false;
+                }
+                next[w] = over & receivers;
+                more |= next[w] != 0;
+                won &= _planes[mine + w] == mask(ALL, w);
+            }
+            if (won) {
+                return false;
+            }
+            _explosions += Long.bitCount(wave[0]) + Long.bitCount(wave[1]);
+            _depth += 1;
+            if (!more) {
+                return true;
+            }
+            long[] tmp = wave;
+            wave = next;
+            next = tmp;
+        }
+    }
+
+    /**
+     * Set DEST to the set of squares that receive a spot when the squares
+     * in SRC jump in direction DIST (DIST squares toward higher square
+     * numbers if UP, else toward lower), restricted to mask #VALID.
+     */
+    private void spread(long[] src, long[] dest, int dist, int valid,
+                        boolean up) {
+        if (up) {
+            dest[1] = (src[1] << dist) | (src[0] >>> (Long.SIZE - dist));
+            dest[0] = src[0] << dist;
+        } else {
+            dest[0] = (src[0] >>> dist) | (src[1] << (Long.SIZE - dist));
+            dest[1] = src[1] >>> dist;
+        }
+        dest[0] &= mask(valid, 0);
+        dest[1] &= mask(valid, 1);
+    }
+
+    /**
+     * Return the set of squares among those whose bit-sliced spot counts
+     * are S0-S3 that hold more spots than their capacity, where CAP2,
+     * CAP3, and CAP4 are the squares of capacity 2, 3, and 4.
+     */
+    private static long overfull(long s0, long s1, long s2, long s3,
+                                 long cap2, long cap3, long cap4) {
+        long high = s3 | s2;
+        return (cap2 & (high | (s1 & s0)))
+            | (cap3 & high)
+            | (cap4 & (s3 | (s2 & (s1 | s0))));
+    }
+
+    /**
+     * Resolve all jumping on this board one square at a time, exactly as
+     * Board does, given that square #S, owned by the side with ordinal
+     * SIDE, is the only square that might be overfull.
+     */
+    private void sequentialJump(int S, int side) {
+        if (getWinner() != null) {
+            return;
+        }
+        int head, length;
+        head = length = 0;
+        Arrays.fill(_queued, 0);
+        if (overfull(S)) {
+            _queue[length++] = S;
+            _queued[S >>> 6] |= 1L << S;
+        }
+        Geometry geometry = _geometry;
+        int remaining = 0;
+        while (length > 0 && getWinner() == null) {
+            if (remaining == 0) {
+                remaining = length;
+                _depth += 1;
+            }
+            int process = _queue[head];
+            head = (head + 1) % _queue.length;
+            length -= 1;
+            remaining -= 1;
+            _queued[process >>> 6] &= ~(1L << process);
+            if (overfull(process)) {
+                _explosions += 1;
+                int count = geometry.neighbors(process);
+                for (int k = 0; k < count; k += 1) {
+                    int m = geometry.neighbor(process, k);
+                    put(m, pack(SIDES[side], spotsOf(cell(m)) + 1));
+                    if (overfull(m) && (_queued[m >>> 6] & (1L << m)) == 0) {
+                        _queued[m >>> 6] |= 1L << m;
+                        _queue[(head + length) % _queue.length] = m;
+                        length += 1;
+                    }
+                }
+                put(process, pack(SIDES[side],
+                                   spotsOf(cell(process)) - count));
+            }
+        }
+    }
+
+    /**
+     * Return true iff square #N holds more spots than its capacity.
+     */
+    private boolean overfull(int n) {
+        return spotsOf(cell(n)) > _geometry.neighbors(n);
+    }
+
+    /**
+     * Return the packed contents (see Square.pack) of square #N.
+     */
+    private int cell(int n) {
+        int w = n >>> 6;
+        int spots = 0;
+        for (int i = 0; i < SPOT_PLANES; i += 1) {
+            spots |= (int) (_planes[i * WORDS + w] >>> n & 1) << i;
+        }
+        if ((_planes[RED_PLANE * WORDS + w] >>> n & 1) != 0) {
+            return pack(RED, spots);
+        } else if ((_planes[BLUE_PLANE * WORDS + w] >>> n & 1) != 0) {
+            return pack(BLUE, spots);
+        } else {
+            return INITIAL_CELL;
+        }
+    }
+
+    /**
+     * Set the contents of square #N to the packed square CELL.  Throws
+     * a GameException if CELL has more than MAX_SPOTS spots.
+     */
+    private void put(int n, int cell) {
+        int w = n >>> 6;
+        long bit = 1L << n;
+        int spots = spotsOf(cell), side = sideOrdinalOf(cell);
+        checkSpots(spots);
+        for (int i = 0; i < SPOT_PLANES; i += 1) {
+            setBit(i * WORDS + w, bit, ((spots >>> i) & 1) != 0);
+        }
+        setBit(RED_PLANE * WORDS + w, bit, side == RED.ordinal());
+        setBit(BLUE_PLANE * WORDS + w, bit, side == BLUE.ordinal());
+    }
+
+    /**
+     * Set the bits in BIT of _planes[K] if ON, and otherwise clear them.
+     */
+    private void setBit(int k, long bit, boolean on) {
+        if (on) {
+            _planes[k] |= bit;
+        } else {
+            _planes[k] &= ~bit;
+        }
+    }
+
+    /**
+     * Return word W of mask #WHICH for my size.
+     */
+    private long mask(int which, int w) {
+        return _masks[which * WORDS + w];
+    }
+
+    /**
+     * Return the plane holding the squares owned by the side with ordinal
+     * SIDE.
+     */
+    private static int ownerPlane(int side) {
+        return side == RED.ordinal() ? RED_PLANE : BLUE_PLANE;
+    }
+
+    /**
+     * Push my planes onto the undo history.
+     */
+    private void saveHistory() {
+        int size = _planes.length;
+        if ((_historyTop + 1) * size > _history.length) {
+            _history = Arrays.copyOf(_history, 2 * _history.length);
+        }
+        System.arraycopy(_planes, 0, _history, _historyTop * size, size);
+        _historyTop += 1;
+    }
+
+    /**
+     * Restore my planes from entry K of the undo history.
+     */
+    private void restoreHistory(int k) {
+        int size = _planes.length;
+        System.arraycopy(_history, k * size, _planes, 0, size);
+        _keyValid = false;
+    }
+
+    /**
+     * All Sides, indexed by ordinal.
+     */
+    private static final Side[] SIDES = Side.values();
+
+    /**
+     * Number of longs in each plane.
+     */
+    private static final int WORDS = 2;
+
+    /**
+     * Plane numbers: the binary digits of the spot counts, least
+     * significant first, then the squares owned by each side.
+     */
+    private static final int
+        S0 = 0, S1 = 1, S2 = 2, S3 = 3, RED_PLANE = 4, BLUE_PLANE = 5;
+
+    /**
+     * Number of spot-count planes and of planes.
+     */
+    private static final int SPOT_PLANES = 4, PLANES = 6;
+
+    /**
+     * Mask numbers: all squares, squares not in the first column or not
+     * in the last, and squares with capacity 2, 3, and 4.
+     */
+    private static final int
+        ALL = 0, NOT_FIRST_COL = 1, NOT_LAST_COL = 2,
+        CAP2 = 3, CAP3 = 4, CAP4 = 5, MASK_COUNT = 6;
+
+    /**
+     * MASKS[N] holds the masks for an N x N board, each WORDS longs.
+     */
+    private static final long[][] MASKS =
+        new long[MAX_SIZE + 1][];
+
+    static {
+        assert MAX_SIZE * MAX_SIZE
+            <= WORDS * Long.SIZE;
+        assert MAX_SPOTS == (1 << SPOT_PLANES) - 1;
+        for (int N = 2; N <= MAX_SIZE; N += 1) {
+            long[] masks = new long[MASK_COUNT * WORDS];
+            Geometry geometry = Geometry.of(N);
+            for (int n = 0; n < N * N; n += 1) {
+                int w = n >>> 6;
+                long bit = 1L << n;
+                masks[ALL * WORDS + w] |= bit;
+                if (n % N != 0) {
+                    masks[NOT_FIRST_COL * WORDS + w] |= bit;
+                }
+                if (n % N != N - 1) {
+                    masks[NOT_LAST_COL * WORDS + w] |= bit;
+                }
+                int cap = CAP2 + geometry.neighbors(n) - 2;
+                masks[cap * WORDS + w] |= bit;
+            }
+            MASKS[N] = masks;
+        }
+    }
+
+    /**
+     * The number of rows and of columns.
+     */
+    private int _size;
+
+    /**
+     * The neighbor structure of boards of my size.
+     */
+    private Geometry _geometry;
+
+    /**
+     * The masks for my size (see MASKS).
+     */
+    private long[] _masks;
+
+    /**
+     * My planes: plane #P occupies _planes[P * WORDS] through
+     * _planes[P * WORDS + WORDS - 1].
+     */
+    private final long[] _planes = new long[PLANES * WORDS];
+
+    /**
+     * The result of playable.
+     */
+    private final long[] _playable = new long[WORDS];
+
+    /**
+     * The result of critical.
+     */
+    private final long[] _critical = new long[WORDS];
+
+    /**
+     * Saved copies of _planes at the start of each move in the undo
+     * history, _historyTop of them.
+     */
+    private long[] _history = new long[16 * PLANES * WORDS];
+
+    /**
+     * The number of moves in the undo history.
+     */
+    private int _historyTop;
+
+    /**
+     * The number of moves made since the last clear or copy.
+     */
+    private int _numMoves;
+
+    /**
+     * The Zobrist keys of my position under each symmetry (see
+     * Board.symmetricKey), valid iff _keyValid.
+     */
+    private final long[] _keys = new long[Geometry.SYMMETRIES];
+
+    /**
+     * True iff _keys is up to date.
+     */
+    private boolean _keyValid;
+
+    /**
+     * The number of jumps and of generations of jumps in the cascade of
+     * the last move (see MoveDelta).
+     */
+    private int _explosions, _depth;
+
+    /**
+     * Buffer for getCells.
+     */
+    private byte[] _cells;
+
+    /**
+     * Squares jumping in the current and next waves, and those receiving
+     * spots from below, above, the right, and the left.  Allocated here
+     * to cut down on allocations.
+     */
+    private long[] _wave = new long[WORDS], _next = new long[WORDS],
+        _down = new long[WORDS], _up = new long[WORDS],
+        _right = new long[WORDS], _left = new long[WORDS];
+
+    /**
+     * Work queue and queued-square set for sequentialJump.
+     */
+    private final int[] _queue =
+        new int[MAX_SIZE * MAX_SIZE];
+    /**
+     * Bit set of the squares in _queue.
+     */
+    private final long[] _queued = new long[WORDS];
+}
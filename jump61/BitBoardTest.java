@@ -0,0 +1,88 @@
+package jump61;
+
+import static jump61.Side.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of BitBoards.  Runs all the tests of BoardTest on
+ * BitBoards, and checks that BitBoards and Boards agree.
+ *
+ * @author Bernie Miao
+ */
+
+public class BitBoardTest extends BoardTest {
+
+    @Override
+    Board newBoard(int N) {
+        return new BitBoard(N);
+    }
+
+    @Test
+    public void matchesBoard() {
+        Random rand = new Random(61);
+        for (int game = 0; game < 300; game += 1) {
+            int N = 2 + rand.nextInt(BitBoard.MAX_SIZE - 1);
+            Board B = new Board(N);
+            Board bits = new BitBoard(N);
+            int moves = 0;
+            for (int k = 0; k < 300 && B.getWinner() == null; k += 1) {
+                String msg = String.format("game %d move %d", game, k);
+                if (moves > 0 && rand.nextInt(8) == 0) {
+                    B.undo();
+                    bits.undo();
+                    moves -= 1;
+                } else {
+                    Side player = B.whoseMove();
+                    int n;
+                    do {
+                        n = rand.nextInt(N * N);
+                    } while (!B.isLegal(player, n));
+                    B.addSpot(player, n);
+                    bits.addSpot(player, n);
+                    moves += 1;
+                }
+                assertEquals(msg, B, bits);
+                assertEquals(msg, B.numPieces(), bits.numPieces());
+                assertEquals(msg, B.numOfSide(RED), bits.numOfSide(RED));
+                assertEquals(msg, B.zobristKey(), bits.zobristKey());
+                assertEquals(msg, B.getWinner(), bits.getWinner());
+            }
+        }
+    }
+
+    @Test
+    public void testLimits() {
+        Board bits = new BitBoard(3);
+        bits.set(1, 1, BitBoard.MAX_SPOTS, RED);
+        try {
+            bits.set(2, 2, BitBoard.MAX_SPOTS + 1, BLUE);
+            fail("set too many spots");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+        assertSame("failed set changed board", Square.INITIAL,
+                   bits.get(2, 2));
+        byte[] cells = bits.getCells().clone();
+        cells[4] = (byte) Square.pack(BLUE, BitBoard.MAX_SPOTS + 1);
+        try {
+            bits.setContents(3, cells);
+            fail("set contents with too many spots");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+        assertEquals("failed setContents changed board", BitBoard.MAX_SPOTS,
+                     bits.get(1, 1).getSpots());
+        try {
+            bits.setCascadeCache(new CascadeCache(4, 9));
+            fail("accepted cascade cache");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -1,14 +1,20 @@
 package jump61;
 
-import java.util.ArrayDeque;
-import java.util.Formatter;
-import java.util.Stack;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import java.util.function.Consumer;
 
 import static java.lang.System.arraycopy;
+import static jump61.Geometry.SYMMETRIES;
 import static jump61.Side.*;
+import static jump61.Square.CELL_MASK;
+import static jump61.Square.INITIAL_CELL;
+import static jump61.Square.pack;
+import static jump61.Square.sideOrdinalOf;
+import static jump61.Square.spotsOf;
 
 /**
  * Represents the state of a Jump61 game.  Squares are indexed either by
@@ -18,6 +24,10 @@ import static jump61.Side.*;
  * <p>
  * A Board may be given a notifier---a Consumer<Board> whose
  * .accept method is called whenever the Board's contents are changed.
+ * <p>
+ * Internally, the contents of the board are kept in a single array of
+ * packed squares (see Square.pack), indexed by square number.  Square
+ * objects are only created when requested through get.
  *
  * @author Bernie Miao
  */
@@ -41,23 +51,47 @@ class Board {
      */
     private int _numSquares;
     /**
-     * A holder for the _cells and _active instance variables of this
-     * Model.
+     * The original contents of the squares changed by each move in the
+     * undo history, oldest first.  Each entry is a square number shifted
+     * left by UNDO_SQUARE_SHIFT, or-ed with that square's packed
+     * contents (see Square.pack) before the move.
+     */
+    private int[] _undoLog = new int[INITIAL_UNDO_SIZE];
+    /**
+     * The number of entries of _undoLog in use.
+     */
+    private int _undoTop;
+    /**
+     * For each move in the undo history, the index in _undoLog of its
+     * first change.
+     */
+    private int[] _undoMarks = new int[INITIAL_UNDO_SIZE];
+    /**
+     * The number of moves in the undo history.
+     */
+    private int _undoCount;
+    /**
+     * The maximum number of _undoLog entries to retain before forgetting
+     * the oldest moves.
+     */
+    private int _undoLimit = Integer.MAX_VALUE;
+
+    /**
+     * Initial capacity of _undoLog and _undoMarks.
+     */
+    private static final int INITIAL_UNDO_SIZE = 64;
+
+    /**
+     * Initial capacity of _workQueue.
      */
-    private Stack<GameState> _undoHistory = new Stack<GameState>();
+    private static final int INITIAL_QUEUE_SIZE = 1024;
 
     /**
      * An N x N board in initial configuration.
      */
     Board(int N) {
         this();
-        _numSquares = N * N;
-        _squares = new Square[N][N];
-        for (int i = 0; i < N; i++) {
-            for (int j = 0; j < N; j++) {
-                _squares[i][j] = Square.square(WHITE, 1);
-            }
-        }
+        initializeBoard(N);
     }
 
     /**
@@ -65,12 +99,32 @@ class Board {
      * Model. NEWSIZE
      */
     void initializeBoard(int newSize) {
-        _squares = new Square[newSize][newSize];
-        for (int i = 0; i < newSize; i++) {
-            for (int j = 0; j < newSize; j++) {
-                _squares[i][j] = Square.square(WHITE, 1);
-            }
+        _size = newSize;
+        _geometry = Geometry.of(newSize);
+        _numSquares = newSize * newSize;
+        if (_specialized
+            && (_kernel == null || _kernel.size() != newSize)) {
+            _kernel = CascadeKernel.of(newSize);
         }
+        if (_cells == null || _cells.length != _numSquares) {
+            _cells = new byte[_numSquares];
+        }
+        Arrays.fill(_cells, (byte) INITIAL_CELL);
+        if (_queued == null || _queued.length != (_numSquares + 63) >>> 6) {
+            _workQueue = new int[Math.min(_numSquares, INITIAL_QUEUE_SIZE)];
+            _queued = new long[(_numSquares + 63) >>> 6];
+            _logged = new long[(_numSquares + 63) >>> 6];
+            _playable[RED.ordinal()] = new long[_queued.length];
+            _playable[BLUE.ordinal()] = new long[_queued.length];
+            _critical[RED.ordinal()] = new long[_queued.length];
+            _critical[BLUE.ordinal()] = new long[_queued.length];
+            _queueHead = 0;
+        }
+        _numPieces = _numSquares;
+        Arrays.fill(_sideCounts, 0);
+        _sideCounts[WHITE.ordinal()] = _numSquares;
+        Arrays.fill(_keys, 0);
+        resetSquareSets();
     }
 
     /**
@@ -81,13 +135,15 @@ class Board {
         this(board0.size());
         setNotifier(NOP);
         internalCopy(board0);
-        _readonlyBoard = new ConstantBoard(this);
     }
 
     /**
      * Returns a readonly version of this board.
      */
     Board readonlyBoard() {
+        if (_readonlyBoard == null) {
+            _readonlyBoard = new ConstantBoard(this);
+        }
         return _readonlyBoard;
     }
 
@@ -98,7 +154,37 @@ class Board {
     void clear(int N) {
         _numMoves = 0;
         initializeBoard(N);
-        _undoHistory.clear();
+        clearUndo();
+        announce();
+    }
+
+    /**
+     * Set me to an N x N board whose packed squares (see Square.pack)
+     * are CELLS[0 .. N*N-1], none of which may hold more spots than its
+     * square has neighbors unless one side holds every square.  Clears
+     * the undo history, sets the number of moves to 0, and announces the
+     * change once.
+     */
+    void setContents(int N, byte[] cells) {
+        _numMoves = 0;
+        initializeBoard(N);
+        clearUndo();
+        arraycopy(cells, 0, _cells, 0, _numSquares);
+        _numPieces = CellScan.spots(_cells, 0, _numSquares);
+        _sideCounts[WHITE.ordinal()] = _numSquares;
+        for (Side side : new Side[] { RED, BLUE }) {
+            int count = CellScan.count(_cells, 0, _numSquares,
+                                       side.ordinal());
+            _sideCounts[side.ordinal()] = count;
+            _sideCounts[WHITE.ordinal()] -= count;
+        }
+        resetSquareSets();
+        for (int n = 0; n < _numSquares; n += 1) {
+            int cell = _cells[n] & CELL_MASK;
+            if (cell != INITIAL_CELL) {
+                updateKeys(n, INITIAL_CELL, cell);
+            }
+        }
         announce();
     }
 
@@ -114,7 +200,7 @@ class Board {
         }
         internalCopy(board);
         _numMoves = 0;
-        _undoHistory.clear();
+        clearUndo();
     }
 
     /**
@@ -123,38 +209,25 @@ class Board {
      */
     private void internalCopy(Board board) {
         assert size() == board.size();
-
-        for (int i = 0; i < size(); i++) {
-            Square[] row = board.getBoard()[i];
-            System.arraycopy(row, 0, _squares[i], 0, size());
+        arraycopy(board.getCells(), 0, _cells, 0, _numSquares);
+        _numPieces = board.numPieces();
+        for (Side side : Side.values()) {
+            _sideCounts[side.ordinal()] = board.numOfSide(side);
         }
-    }
-
-    /**
-     * Copy contents of SRC into DEST.  SRC and DEST must both be
-     * rectangular, with identical dimensions.
-     */
-    static void deepCopy(Square[][] src, Square[][] dest) {
-        assert src.length == dest.length && src[0].length == dest[0].length;
-        for (int i = 0; i < src.length; i += 1) {
-            arraycopy(src[i], 0, dest[i], 0, src[i].length);
+        resetSquareSets();
+        _keys[0] = board.zobristKey();
+        if (_geometry.tabled()) {
+            for (int t = 1; t < SYMMETRIES; t += 1) {
+                _keys[t] = board.symmetricKey(t);
+            }
         }
     }
 
-    /**
-     * Returns a deep copy of SRC: the result has no shared state with SRC.
-     */
-    static Square[][] deepCopyOf(Square[][] src) {
-        Square[][] result = new Square[src.length][src[0].length];
-        deepCopy(src, result);
-        return result;
-    }
-
     /**
      * Return the number of rows and of columns of THIS.
      */
     int size() {
-        return getBoard()[1].length;
+        return _size;
     }
 
     /**
@@ -171,29 +244,144 @@ class Board {
      * size() - 2*size() - 1, etc.
      */
     Square get(int n) {
-        return getBoard()[row(n) - 1][col(n) - 1];
+        return Square.square(_cells[n]);
     }
 
     /**
-     * A holder for the _cells and _active instance variables of this
-     * Model.
-     * @return nihao
+     * Returns the (shared) neighbor structure of this board.
+     */
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    /**
+     * Returns the packed contents (see Square.pack) of all squares,
+     * indexed by square number.  The result is my internal representation
+     * and must not be modified.
      */
-    Square[][] getBoard() {
-        return _squares;
+    byte[] getCells() {
+        return _cells;
     }
 
     /**
      * Returns the total number of spots on the board.
      */
     int numPieces() {
-        int num = 0;
-        for (Square[] col : _squares) {
-            for (Square row : col) {
-                num += row.getSpots();
+        return _numPieces;
+    }
+
+    /**
+     * Returns the Zobrist key of the current position (see Zobrist).
+     * Equal positions have equal keys, and the key is maintained as
+     * squares change, so this takes constant time.
+     */
+    long zobristKey() {
+        return _keys[0];
+    }
+
+    /**
+     * Returns the Zobrist key of the position obtained by applying
+     * symmetry #T (see Geometry) to the current position.  These keys
+     * are also maintained as squares change, except on boards too large
+     * for tabled Geometries, where they take time proportional to the
+     * number of squares.
+     */
+    long symmetricKey(int t) {
+        if (t == 0 || _geometry.tabled()) {
+            return _keys[t];
+        }
+        long key = 0;
+        for (int n = 0; n < _numSquares; n += 1) {
+            key ^= Zobrist.key(_geometry.symmetric(t, n),
+                               _cells[n] & CELL_MASK);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the Zobrist key of the canonical form of the current
+     * position: the same for all positions that are rotations or
+     * reflections of one another.
+     */
+    final long canonicalKey() {
+        return symmetricKey(canonicalSymmetry());
+    }
+
+    /**
+     * Returns the number of the symmetry that takes the current position
+     * to its canonical form: the one whose symmetricKey is least,
+     * preferring the lowest-numbered in case of ties.  Square #N of this
+     * board corresponds to square #geometry().symmetric(T, N) of the
+     * canonical form, where T is the result.
+     */
+    final int canonicalSymmetry() {
+        int best = 0;
+        long bestKey = symmetricKey(0);
+        for (int t = 1; t < SYMMETRIES; t += 1) {
+            long key = symmetricKey(t);
+            if (key < bestKey) {
+                best = t;
+                bestKey = key;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the square number in the canonical form of this position
+     * that corresponds to square #N here.
+     */
+    final int toCanonical(int n) {
+        return geometry().symmetric(canonicalSymmetry(), n);
+    }
+
+    /**
+     * Returns the square number in this position that corresponds to
+     * square #N of its canonical form.
+     */
+    final int fromCanonical(int n) {
+        return geometry().symmetric(Geometry.inverse(canonicalSymmetry()),
+                                    n);
+    }
+
+    /**
+     * Returns a new Board holding the canonical form of the current
+     * position, with a clear undo history.
+     */
+    final Board canonicalBoard() {
+        Board result = new Board(size());
+        Geometry geometry = geometry();
+        int t = canonicalSymmetry();
+        byte[] cells = getCells();
+        for (int n = 0; n < cells.length; n += 1) {
+            result.setCell(geometry.symmetric(t, n), INITIAL_CELL,
+                           cells[n] & CELL_MASK);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the set of symmetries that leave the current position
+     * unchanged, as a bit mask in which bit T is set iff symmetry #T
+     * does (so bit 0 is always set).  Only symmetries whose keys match
+     * the current one are checked square by square.
+     */
+    final int symmetries() {
+        int result = 1;
+        Geometry geometry = geometry();
+        byte[] cells = getCells();
+        for (int t = 1; t < SYMMETRIES; t += 1) {
+            if (symmetricKey(t) == symmetricKey(0)) {
+                boolean same = true;
+                for (int n = 0; same && n < cells.length; n += 1) {
+                    same = cells[geometry.symmetric(t, n)] == cells[n];
+                }
+                if (same) {
+                    result |= 1 << t;
+                }
             }
         }
-        return num;
+        return result;
     }
 
     /**
@@ -267,10 +455,8 @@ class Board {
      * to square #N.
      */
     boolean isLegal(Side player, int n) {
-        if (isLegal(player)) {
-            return (get(n).getSide() == WHITE || get(n).getSide() == player);
-        }
-        return false;
+        return isLegal(player)
+            && (playable(player)[n >>> 6] & (1L << n)) != 0;
     }
 
     /**
@@ -285,10 +471,10 @@ class Board {
      * and otherwise null.
      */
     final Side getWinner() {
-        _numSquares = size() * size();
-        if (numOfSide((RED)) == _numSquares) {
+        int numSquares = size() * size();
+        if (numOfSide(RED) == numSquares) {
             return RED;
-        } else if (numOfSide(BLUE) == _numSquares) {
+        } else if (numOfSide(BLUE) == numSquares) {
             return BLUE;
         }
         return null;
@@ -298,15 +484,7 @@ class Board {
      * Return the number of squares of given SIDE.
      */
     int numOfSide(Side side) {
-        int count = 0;
-        for (Square[] row : getBoard()) {
-            for (Square element : row) {
-                if (element.getSide().equals(side)) {
-                    count++;
-                }
-            }
-        }
-        return count;
+        return _sideCounts[side.ordinal()];
     }
 
     /**
@@ -314,26 +492,88 @@ class Board {
      * isLegal(PLAYER, R, C).
      */
     void addSpot(Side player, int r, int c) {
-        _numMoves++;
-        markUndo();
-        int tempNumSpots = get(r, c).getSpots();
-        internalSet(r, c, tempNumSpots + 1, player);
-        jump(sqNum(r, c));
+        addSpot(player, sqNum(r, c));
     }
 
     /**
      * Add a spot from PLAYER at square #N.  Assumes isLegal(PLAYER, N).
      */
     void addSpot(Side player, int n) {
-        addSpot(player, row(n), col(n));
+        markUndo();
+        _numMoves++;
+        int start = _undoTop;
+        CascadeCache cache = _cascadeCache;
+        long key = _keys[0];
+        MoveDelta cached =
+            cache == null ? null : cache.lookup(key, player, n, _cells);
+        if (cached != null) {
+            replay(cached);
+        } else {
+            internalSet(n, spotsOf(_cells[n]) + 1, player);
+            jump(n);
+            if (cache != null && _explosions > 0) {
+                cache.store(key, recordMove(player, n, _cacheDelta));
+            }
+        }
+        endLogging(start);
     }
 
     /**
-     * Set the square at row R, column C to NUM spots (0 <= NUM), and give
-     * it color PLAYER if NUM > 0 (otherwise, white).
+     * Make the changes recorded in DELTA, logging them for undo.
+     */
+    private void replay(MoveDelta delta) {
+        for (int i = 0; i < delta.size(); i += 1) {
+            int n = delta.square(i), old = delta.oldCell(i);
+            log(n, old);
+            setCell(n, old, delta.newCell(i));
+        }
+        _explosions = delta.explosions();
+        _depth = delta.depth();
+    }
+
+    /**
+     * Fill in DELTA, which is returned, with the effects of the move
+     * just made by PLAYER on square #N, as recorded in the undo log.
+     */
+    private MoveDelta recordMove(Side player, int n, MoveDelta delta) {
+        delta.start(_size, player, n);
+        for (int i = _undoMarks[_undoCount - 1]; i < _undoTop; i += 1) {
+            int entry = _undoLog[i];
+            int sq = entry >>> UNDO_SQUARE_SHIFT;
+            delta.add(sq, entry, _cells[sq]);
+        }
+        delta.finish(_explosions, _depth);
+        return delta;
+    }
+
+    /**
+     * Add a spot from PLAYER at row R, column C, recording its effects in
+     * DELTA, which is returned.  Assumes isLegal(PLAYER, R, C).
+     */
+    MoveDelta addSpot(Side player, int r, int c, MoveDelta delta) {
+        return addSpot(player, sqNum(r, c), delta);
+    }
+
+    /**
+     * Add a spot from PLAYER at square #N, as for addSpot(PLAYER, N), and
+     * record its effects in DELTA, which is returned.  The squares
+     * changed are exactly those the undo log records for the move, so
+     * this costs time proportional to their number.
+     */
+    MoveDelta addSpot(Side player, int n, MoveDelta delta) {
+        addSpot(player, n);
+        return recordMove(player, n, delta);
+    }
+
+    /**
+     * Set the square at row R, column C to NUM spots (0 <= NUM <=
+     * Square.MAX_SPOTS), and give it color PLAYER if NUM > 0 (otherwise,
+     * white).
      */
     void set(int r, int c, int num, Side player) {
+        int start = _undoTop;
         internalSet(r, c, num, player);
+        endLogging(start);
         announce();
     }
 
@@ -348,31 +588,309 @@ class Board {
 
     /**
      * Set the square #N to NUM spots (0 <= NUM), and give it color PLAYER
-     * if NUM > 0 (otherwise, white). Does not announce changes.
+     * if NUM > 0 (otherwise, white), updating the counts of spots and of
+     * squares of each color. Does not announce changes.  Only the first
+     * change to each square is logged for undo until the next call to
+     * endLogging, since only its original contents need restoring.
      */
     private void internalSet(int n, int num, Side player) {
+        int old = _cells[n] & CELL_MASK, cell = pack(player, num);
+        if (_undoCount > 0) {
+            log(n, old);
+        }
+        setCell(n, old, cell);
+    }
+
+    /**
+     * Record in _undoLog that square #N originally held the packed
+     * square OLD, unless it has already been logged since the last
+     * call to endLogging.
+     */
+    private void log(int n, int old) {
+        long bit = 1L << n;
+        if ((_logged[n >>> 6] & bit) == 0) {
+            _logged[n >>> 6] |= bit;
+            if (_undoTop == _undoLog.length) {
+                _undoLog = Arrays.copyOf(_undoLog, 2 * _undoTop);
+            }
+            _undoLog[_undoTop] = (n << UNDO_SQUARE_SHIFT) | old;
+            _undoTop += 1;
+        }
+    }
+
+    /**
+     * End the logging of a change whose undo log entries start at
+     * _undoLog[START], so that later changes to the same squares are
+     * logged again.
+     */
+    private void endLogging(int start) {
+        for (int i = start; i < _undoTop; i += 1) {
+            int n = _undoLog[i] >>> UNDO_SQUARE_SHIFT;
+            _logged[n >>> 6] &= ~(1L << n);
+        }
+    }
 
-        _squares[row(n) - 1][col(n) - 1] = Square.square(player, num);
+    /**
+     * Replace the contents of square #N, currently OLD, with CELL (both
+     * packed as for Square.pack), updating the counts of spots and of
+     * squares of each color, the playable squares, and the keys.  Does
+     * not record the change for undo.
+     */
+    private void setCell(int n, int old, int cell) {
+        _cells[n] = (byte) cell;
+        _numPieces += spotsOf(cell) - spotsOf(old);
+        int oldSide = sideOrdinalOf(old), side = sideOrdinalOf(cell);
+        if (oldSide != side) {
+            _sideCounts[oldSide] -= 1;
+            _sideCounts[side] += 1;
+            setPlayable(n, side);
+        }
+        updateCritical(n, old, cell);
+        updateKeys(n, old, cell);
     }
 
+    /**
+     * Update _keys for the change of square #N from OLD to CELL.
+     */
+    private void updateKeys(int n, int old, int cell) {
+        Geometry geometry = _geometry;
+        if (!geometry.tabled()) {
+            _keys[0] ^= Zobrist.key(n, old) ^ Zobrist.key(n, cell);
+            return;
+        }
+        for (int t = 0; t < SYMMETRIES; t += 1) {
+            int image = geometry.symmetric(t, n);
+            _keys[t] ^= geometry.zobrist(image, old)
+                ^ geometry.zobrist(image, cell);
+        }
+    }
+
+    /**
+     * Record in _playable that square #N now belongs to the Side with
+     * ordinal SIDE.
+     */
+    private void setPlayable(int n, int side) {
+        long bit = 1L << n;
+        int w = n >>> 6;
+        if (side == BLUE.ordinal()) {
+            _playable[RED.ordinal()][w] &= ~bit;
+        } else {
+            _playable[RED.ordinal()][w] |= bit;
+        }
+        if (side == RED.ordinal()) {
+            _playable[BLUE.ordinal()][w] &= ~bit;
+        } else {
+            _playable[BLUE.ordinal()][w] |= bit;
+        }
+    }
+
+    /**
+     * Update _critical and _criticalCounts for the change of square #N
+     * from OLD to CELL (packed squares).
+     */
+    private void updateCritical(int n, int old, int cell) {
+        int capacity = _geometry.neighbors(n);
+        boolean was = spotsOf(old) == capacity,
+            is = spotsOf(cell) == capacity;
+        if (was == is
+            && (!was || sideOrdinalOf(old) == sideOrdinalOf(cell))) {
+            return;
+        }
+        long bit = 1L << n;
+        int w = n >>> 6;
+        if (was) {
+            int side = sideOrdinalOf(old);
+            _critical[side][w] &= ~bit;
+            _criticalCounts[side][capacity] -= 1;
+        }
+        if (is) {
+            int side = sideOrdinalOf(cell);
+            _critical[side][w] |= bit;
+            _criticalCounts[side][capacity] += 1;
+        }
+    }
+
+    /**
+     * Set _playable, _critical, and _criticalCounts from _cells, 64
+     * squares at a time (see CellScan).
+     */
+    private void resetSquareSets() {
+        for (Side side : new Side[] { RED, BLUE }) {
+            Arrays.fill(_criticalCounts[side.ordinal()], 0);
+        }
+        Geometry geometry = _geometry;
+        for (int w = 0; w < _playable[RED.ordinal()].length; w += 1) {
+            int from = w << 6, to = Math.min(from + 64, _numSquares);
+            long all = to - from == 64 ? -1L : (1L << (to - from)) - 1;
+            long critical = 0;
+            for (int c = 2; c <= Geometry.MAX_NEIGHBORS; c += 1) {
+                critical |= CellScan.spotsMask(_cells, from, to, c)
+                    & geometry.capacityMask(c, w);
+            }
+            for (Side side : new Side[] { RED, BLUE }) {
+                int s = side.ordinal();
+                long mine = CellScan.sideMask(_cells, from, to, s);
+                _playable[side.opposite().ordinal()][w] = all & ~mine;
+                _critical[s][w] = critical & mine;
+                for (int c = 2; c <= Geometry.MAX_NEIGHBORS; c += 1) {
+                    _criticalCounts[s][c] += Long.bitCount(
+                        critical & mine & geometry.capacityMask(c, w));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the set of squares to which SIDE (RED or BLUE) could add a
+     * spot if it were SIDE's move: those that are WHITE or belong to
+     * SIDE.  Square #N is in the set iff bit N % 64 of word N / 64 of the
+     * result is 1.  Bits for nonexistent squares are 0, and there may be
+     * more words than needed.  The set is maintained as squares change,
+     * so this takes constant time; the result may be my internal
+     * representation and must not be modified.
+     */
+    long[] playable(Side side) {
+        return _playable[side.ordinal()];
+    }
+
+    /**
+     * Returns the set of critical squares of SIDE (RED or BLUE): those
+     * it owns that hold as many spots as they have neighbors, so that
+     * one more spot makes them jump.  The representation is as for
+     * playable.  The set is maintained as squares change, so this takes
+     * constant time; the result may be my internal representation and
+     * must not be modified.
+     */
+    long[] critical(Side side) {
+        return _critical[side.ordinal()];
+    }
+
+    /**
+     * Returns the number of critical squares (see critical) of SIDE.
+     */
+    int numCritical(Side side) {
+        int[] counts = _criticalCounts[side.ordinal()];
+        int total = 0;
+        for (int capacity = 2; capacity <= Geometry.MAX_NEIGHBORS;
+             capacity += 1) {
+            total += counts[capacity];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of critical squares (see critical) of SIDE among
+     * those with CAPACITY neighbors: the corners for CAPACITY 2, the
+     * other edge squares for 3, and the interior squares for 4.
+     */
+    int numCritical(Side side, int capacity) {
+        return _criticalCounts[side.ordinal()][capacity];
+    }
+
+    /**
+     * Returns the least square number >= N in playable(SIDE), or -1 if
+     * there is none.  Thus, the squares SIDE may play on are visited by
+     * <pre>
+     *     for (int n = B.nextPlayable(side, 0); n >= 0;
+     *          n = B.nextPlayable(side, n + 1)) ...
+     * </pre>
+     */
+    final int nextPlayable(Side side, int n) {
+        return nextMember(playable(side), n);
+    }
+
+    /**
+     * Returns the least member of the bit set BITS (represented as for
+     * playable) that is >= N, or -1 if there is none.
+     */
+    static int nextMember(long[] bits, int n) {
+        int w = n >>> 6;
+        if (w >= bits.length) {
+            return -1;
+        }
+        long word = bits[w] & (-1L << n);
+        while (word == 0) {
+            w += 1;
+            if (w == bits.length) {
+                return -1;
+            }
+            word = bits[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
 
     /**
      * Undo the effects of one move (that is, one addSpot command).  One
      * can only undo back to the last point at which the undo history
-     * was cleared, or the construction of this Board.
+     * was cleared, or the construction of this Board, or as far back as
+     * allowed by setUndoLimit.  Takes time proportional to the number of
+     * squares changed by the move.
      */
     void undo() {
-        GameState pastState = _undoHistory.pop();
-        pastState.restoreState();
+        _undoCount -= 1;
+        int start = _undoMarks[_undoCount];
+        for (int i = _undoTop - 1; i >= start; i -= 1) {
+            int entry = _undoLog[i];
+            int n = entry >>> UNDO_SQUARE_SHIFT;
+            setCell(n, _cells[n] & CELL_MASK, entry & CELL_MASK);
+        }
+        _undoTop = start;
+        _numMoves -= 1;
     }
 
     /**
-     * Record the beginning of a move in the undo history.
+     * Record the beginning of a move in the undo history.  From here
+     * until the next markUndo or undo, internalSet logs the previous
+     * contents of every square it changes.
      */
     private void markUndo() {
-        GameState currState = new GameState();
-        currState.saveState();
-        _undoHistory.add(currState);
+        if (_undoTop > _undoLimit) {
+            forgetOldMoves();
+        }
+        if (_undoCount == _undoMarks.length) {
+            _undoMarks = Arrays.copyOf(_undoMarks, 2 * _undoCount);
+        }
+        _undoMarks[_undoCount] = _undoTop;
+        _undoCount += 1;
+    }
+
+    /**
+     * Clear the undo history.
+     */
+    private void clearUndo() {
+        _undoCount = 0;
+        _undoTop = 0;
+    }
+
+    /**
+     * Limit the undo history to about LIMIT changed squares.  When a move
+     * starts with more than that recorded, the oldest moves are forgotten
+     * until at most half as many remain, so that the position before the
+     * oldest remaining move becomes a checkpoint past which undo cannot
+     * go.  This caps the memory used by long games on large boards.
+     */
+    void setUndoLimit(int limit) {
+        _undoLimit = limit;
+    }
+
+    /**
+     * Forget the oldest moves in the undo history until no more than
+     * half of _undoLimit log entries remain.  Always keeps the most
+     * recent move.
+     */
+    private void forgetOldMoves() {
+        int k = 0;
+        while (k < _undoCount - 1
+               && _undoTop - _undoMarks[k] > _undoLimit / 2) {
+            k += 1;
+        }
+        int base = _undoMarks[k];
+        arraycopy(_undoLog, base, _undoLog, 0, _undoTop - base);
+        _undoTop -= base;
+        _undoCount -= k;
+        for (int i = 0; i < _undoCount; i += 1) {
+            _undoMarks[i] = _undoMarks[i + k] - base;
+        }
     }
 
     /**
@@ -380,7 +898,7 @@ class Board {
      * updating counts of numbers of squares of each color.
      */
     private void simpleAdd(Side player, int r, int c, int deltaSpots) {
-        internalSet(r, c, deltaSpots + get(r, c).getSpots(), player);
+        simpleAdd(player, sqNum(r, c), deltaSpots);
     }
 
     /**
@@ -388,63 +906,146 @@ class Board {
      * updating counts of numbers of squares of each color.
      */
     private void simpleAdd(Side player, int n, int deltaSpots) {
-        internalSet(n, deltaSpots + get(n).getSpots(), player);
+        internalSet(n, deltaSpots + spotsOf(_cells[n]), player);
     }
 
     /**
-     * Used in jump to keep track of squares needing processing.  Allocated
-     * here to cut down on allocations.
+     * Used in jump to keep track of squares needing processing: a ring
+     * buffer of square numbers holding _queueLength entries starting at
+     * _queueHead.  Since no square is queued twice, it never needs more
+     * than one entry per square.  Allocated here to cut down on
+     * allocations, and grown as needed, so that large boards pay only
+     * for their largest cascades.
+     */
+    private int[] _workQueue;
+    /**
+     * Index of the first entry of _workQueue.
+     */
+    private int _queueHead;
+    /**
+     * Number of entries in _workQueue.
+     */
+    private int _queueLength;
+    /**
+     * Bit set of the square numbers currently in _workQueue.
+     */
+    private long[] _queued;
+
+    /**
+     * Bit set of the square numbers already logged in _undoLog during
+     * the current change (see internalSet).
      */
-    private final ArrayDeque<Integer> _workQueue = new ArrayDeque<>();
+    private long[] _logged;
 
     /**
-     * Returns ture if N is overfull.
+     * The number of jumps and of generations of jumps in the cascade of
+     * the last move (see MoveDelta).
      */
-    private boolean overfull(int N) {
-        return (get(N).getSpots() > neighbors(N));
-    }
+    private int _explosions, _depth;
 
     /**
-     * If neighbour is valid, then add to them, then if they're overfull.
-     * then add that very neighbour into the _workQueue INITIALSIDE, N
-     * @return IDK
+     * The cache of move effects consulted by addSpot, or null.
      */
-    private int addToValidNeighbours(int N, Side initialSide) {
-        Square curr = get(N);
-        int pointsLost = 0;
-        int row = row(N);
-        int col = col(N);
-        ArrayList<Integer> neighbourArray = new ArrayList<Integer>();
+    private CascadeCache _cascadeCache;
 
-        if (exists(row + 1, col)) {
-            simpleAdd(initialSide, sqNum(row + 1, col), 1);
-            pointsLost++;
-            neighbourArray.add(sqNum(row + 1, col));
-        }
-        if (exists(row - 1, col)) {
-            simpleAdd(initialSide, sqNum(row - 1, col), 1);
-            pointsLost++;
-            neighbourArray.add(sqNum(row - 1, col));
-        }
-        if (exists(row, col + 1)) {
-            simpleAdd(initialSide, sqNum(row, col + 1), 1);
-            pointsLost++;
-            neighbourArray.add(sqNum(row, col + 1));
+    /**
+     * Buffer for the effects of moves stored in _cascadeCache, or null
+     * if not yet needed.
+     */
+    private MoveDelta _cacheDelta;
+
+    /**
+     * The cascade kernel specialized for my size, or null if there is
+     * none or it is not wanted.
+     */
+    private CascadeKernel _kernel;
+
+    /**
+     * True iff _kernel should be used when available (see
+     * setSpecialized).
+     */
+    private boolean _specialized = true;
+
+    /**
+     * The engine used by waveJump, or null if not yet needed.
+     */
+    private WaveCascade _waves;
+
+    /**
+     * The threshold set by setWaveThreshold, or 0 for the default.
+     */
+    private int _waveThreshold;
+
+    /**
+     * Add square #N to the end of _workQueue, if it is not already there.
+     */
+    private void enqueue(int n) {
+        long bit = 1L << n;
+        if ((_queued[n >>> 6] & bit) == 0) {
+            _queued[n >>> 6] |= bit;
+            if (_queueLength == _workQueue.length) {
+                growQueue();
+            }
+            int tail = _queueHead + _queueLength;
+            if (tail >= _workQueue.length) {
+                tail -= _workQueue.length;
+            }
+            _workQueue[tail] = n;
+            _queueLength += 1;
         }
+    }
+
+    /**
+     * Double the capacity of the full _workQueue, preserving its
+     * contents.
+     */
+    private void growQueue() {
+        int[] queue = new int[Math.min(2 * _workQueue.length, _numSquares)];
+        int first = _workQueue.length - _queueHead;
+        arraycopy(_workQueue, _queueHead, queue, 0, first);
+        arraycopy(_workQueue, 0, queue, first, _queueHead);
+        _workQueue = queue;
+        _queueHead = 0;
+    }
 
-        if (exists(row, col - 1)) {
-            simpleAdd(initialSide, sqNum(row, col - 1), 1);
-            pointsLost++;
-            neighbourArray.add(sqNum(row, col - 1));
+    /**
+     * Remove and return the first square number in _workQueue.
+     */
+    private int dequeue() {
+        int n = _workQueue[_queueHead];
+        _queued[n >>> 6] &= ~(1L << n);
+        _queueHead += 1;
+        if (_queueHead == _workQueue.length) {
+            _queueHead = 0;
         }
+        _queueLength -= 1;
+        return n;
+    }
+
+    /**
+     * Returns ture if N is overfull.
+     */
+    private boolean overfull(int N) {
+        return spotsOf(_cells[N]) > _geometry.neighbors(N);
+    }
 
-        for (int neighbour : neighbourArray) {
-            if (overfull(neighbour) && !_workQueue.contains(neighbour)) {
-                _workQueue.add(neighbour);
+    /**
+     * Add a spot of color INITIALSIDE to each neighbor of square #N,
+     * adding those that become overfull to _workQueue.  Returns the
+     * number of neighbors (the number of spots N loses).
+     */
+    private int addToValidNeighbours(int N, Side initialSide) {
+        Geometry geometry = _geometry;
+        int pointsLost = geometry.neighbors(N);
+
+        for (int k = 0; k < pointsLost; k += 1) {
+            int neighbour = geometry.neighbor(N, k);
+            simpleAdd(initialSide, neighbour, 1);
+            if (overfull(neighbour)) {
+                enqueue(neighbour);
             }
         }
         return pointsLost;
-
     }
 
     /**
@@ -454,24 +1055,176 @@ class Board {
     private void jump(int S) {
         int process;
         int pointsLost;
-        Side initialSide = get(S).getSide();
+        Side initialSide = Square.sideOf(_cells[S]);
+        _explosions = _depth = 0;
         if (getWinner() != null) {
             return;
         }
+        if (_kernel != null && _waveThreshold <= 0) {
+            kernelJump(S, initialSide);
+            return;
+        }
         if (overfull(S)) {
-            _workQueue.add(S);
+            enqueue(S);
         }
 
-        while (!_workQueue.isEmpty() && getWinner() == null) {
-            process = _workQueue.pop();
+        int threshold = waveThreshold();
+        int remaining = 0;
+        while (_queueLength > 0 && getWinner() == null) {
+            if (remaining == 0) {
+                if (_queueLength >= threshold) {
+                    waveJump(initialSide, threshold);
+                    continue;
+                }
+                remaining = _queueLength;
+                _depth += 1;
+            }
+            process = dequeue();
+            remaining -= 1;
             if (overfull(process)) {
                 pointsLost = addToValidNeighbours(process, initialSide);
-                internalSet(process, get(process).getSpots()
-                        - neighbors(process), initialSide);
+                internalSet(process, spotsOf(_cells[process])
+                        - pointsLost, initialSide);
+                _explosions += 1;
+            }
+        }
+        while (_queueLength > 0) {
+            dequeue();
+        }
+    }
+
+    /**
+     * Do all jumping for PLAYER with _kernel, assuming that initially, S
+     * is the only square that might be over-full, and then account for
+     * the net change to each square the kernel changed.
+     */
+    private void kernelJump(int S, Side player) {
+        CascadeKernel kernel = _kernel;
+        int changes = kernel.jump(_cells, S, player.ordinal(),
+                                  _sideCounts[player.ordinal()]);
+        boolean log = _undoCount > 0;
+        for (int i = 0; i < changes; i += 1) {
+            int change = kernel.change(i);
+            int n = change >>> UNDO_SQUARE_SHIFT;
+            if (log) {
+                log(n, change & CELL_MASK);
+            }
+            setCell(n, change & CELL_MASK, _cells[n] & CELL_MASK);
+        }
+        _explosions = kernel.explosions();
+        _depth = kernel.depth();
+    }
+
+    /**
+     * Continue the cascade of jump for PLAYER by processing the contents
+     * of _workQueue in parallel waves (see WaveCascade), until the game
+     * is won or a wave has fewer than half THRESHOLD squares.  Leaves the
+     * remaining wave in _workQueue.
+     */
+    private void waveJump(Side player, int threshold) {
+        WaveCascade waves = _waves;
+        if (waves == null || waves.size() != _size) {
+            waves = _waves = new WaveCascade(_geometry);
+        }
+        while (_queueLength > 0) {
+            waves.add(dequeue());
+        }
+        boolean log = _undoCount > 0;
+        while (waves.length() > 0 && waves.length() >= threshold / 2) {
+            boolean won = waves.step(_cells, player,
+                                     _sideCounts[player.ordinal()]);
+            _numPieces += waves.pieceDelta();
+            _explosions += waves.jumps();
+            _depth += 1;
+            for (Side side : Side.values()) {
+                _sideCounts[side.ordinal()] += waves.sideDelta(side);
             }
+            for (int t = 0; t < SYMMETRIES; t += 1) {
+                _keys[t] ^= waves.keyDelta(t);
+            }
+            for (int k = 0; k < waves.chunks(); k += 1) {
+                for (int i = 0; i < waves.changes(k); i += 1) {
+                    int change = waves.change(k, i);
+                    int n = change >>> UNDO_SQUARE_SHIFT;
+                    setPlayable(n, player.ordinal());
+                    updateCritical(n, change & CELL_MASK, _cells[n]);
+                    if (log) {
+                        log(n, change & CELL_MASK);
+                    }
+                }
+            }
+            if (won) {
+                break;
+            }
+        }
+        for (int i = 0; i < waves.length(); i += 1) {
+            enqueue(waves.square(i));
+        }
+        waves.clear();
+    }
+
+    /**
+     * Return the smallest number of queued squares for which jump
+     * switches to parallel waves.
+     */
+    private int waveThreshold() {
+        if (_waveThreshold > 0) {
+            return _waveThreshold;
+        } else if (_geometry.tabled()
+                   || ForkJoinPool.getCommonPoolParallelism()
+                      < WaveCascade.MIN_PARALLELISM) {
+            return Integer.MAX_VALUE;
+        } else {
+            return WaveCascade.DEFAULT_THRESHOLD;
+        }
+    }
+
+    /**
+     * Make jump process its queue in parallel waves (see WaveCascade)
+     * whenever at least THRESHOLD squares are queued.  The results are
+     * the same either way.  If THRESHOLD <= 0, restores the default,
+     * which uses parallel waves on boards too large for tabled
+     * Geometries (see Geometry.tabled), when enough processors are
+     * available (see WaveCascade.MIN_PARALLELISM).  A THRESHOLD > 0
+     * takes precedence over the cascade kernel (see setSpecialized).
+     */
+    void setWaveThreshold(int threshold) {
+        _waveThreshold = threshold;
+    }
+
+    /**
+     * Consult CACHE (see CascadeCache) before each move, replaying the
+     * cached effects of the move if there are any, and store the effects
+     * of the moves it lacks.  If CACHE is null, stop using a cache.  The
+     * results are the same either way.  CACHE should only be used by
+     * Boards of my size.
+     */
+    void setCascadeCache(CascadeCache cache) {
+        _cascadeCache = cache;
+        if (cache != null && _cacheDelta == null) {
+            _cacheDelta = new MoveDelta();
         }
     }
 
+    /**
+     * Return the cache set by setCascadeCache, or null if there is
+     * none.
+     */
+    CascadeCache cascadeCache() {
+        return _cascadeCache;
+    }
+
+    /**
+     * Use the cascade kernel specialized for my size (see CascadeKernel),
+     * if there is one, iff ON.  The results are the same either way.  By
+     * default, kernels are used, except while a wave threshold is set
+     * (see setWaveThreshold).
+     */
+    void setSpecialized(boolean on) {
+        _specialized = on;
+        _kernel = on ? CascadeKernel.of(_size) : null;
+    }
+
     /**
      * A holder for the _cells and _active instance variables of this
      * Model. SIDE
@@ -494,21 +1247,30 @@ class Board {
      */
     @Override
     public String toString() {
-        Formatter out = new Formatter();
-        String entireRow = "";
-        String entireTable = "===";
-
-        for (Square[] row : _squares) {
-            entireRow = "    ";
-            for (Square col : row) {
-                int spots = col.getSpots();
-                String side = col.getSide().toString();
-                entireRow += spots + sideToString(side) + " ";
+        StringBuilder out = new StringBuilder();
+        dump(out);
+        return out.toString();
+    }
+
+    /**
+     * Append my dumped representation (as returned by toString) to OUT.
+     */
+    void dump(Appendable out) {
+        try {
+            int size = size();
+            byte[] cells = getCells();
+            out.append("===");
+            for (int n = 0; n < cells.length; n += size) {
+                out.append("\n    ");
+                for (int c = 0; c < size; c += 1) {
+                    appendSquare(out, cells[n + c]);
+                    out.append(' ');
+                }
             }
-            entireTable += "\n" + entireRow;
+            out.append("\n===");
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
         }
-
-        return entireTable + "\n" + "===";
     }
 
     /**
@@ -517,60 +1279,109 @@ class Board {
      * from the dumped representation (returned by toString).
      */
     public String toDisplayString() {
-        String[] lines = toString().trim().split("\\R");
-        Formatter out = new Formatter();
-        for (int i = 1; i + 1 < lines.length; i += 1) {
-            out.format("%2d %s%n", i, lines[i].trim());
-        }
-        out.format("  ");
-        for (int i = 1; i <= size(); i += 1) {
-            out.format("%3d", i);
-        }
+        StringBuilder out = new StringBuilder();
+        display(out);
         return out.toString();
     }
 
     /**
-     * Returns the number of neighbors of the square at row R, column C.
+     * Append my external rendition (as returned by toDisplayString) to
+     * OUT.
      */
-    int neighbors(int r, int c) {
-        int size = size();
-        int n;
-        n = 0;
-        if (r > 1) {
-            n += 1;
+    void display(Appendable out) {
+        try {
+            int size = size();
+            byte[] cells = getCells();
+            for (int r = 0; r < size; r += 1) {
+                appendPadded(out, r + 1, 2);
+                for (int c = 0; c < size; c += 1) {
+                    out.append(' ');
+                    appendSquare(out, cells[r * size + c]);
+                }
+                out.append(LINE_SEPARATOR);
+            }
+            out.append("  ");
+            for (int c = 1; c <= size; c += 1) {
+                appendPadded(out, c, 3);
+            }
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
         }
-        if (c > 1) {
-            n += 1;
+    }
+
+    /**
+     * Append the dumped representation of the packed square CELL (its
+     * number of spots followed by '-', 'r', or 'b') to OUT.
+     */
+    private static void appendSquare(Appendable out, int cell)
+        throws IOException {
+        appendPadded(out, spotsOf(cell), 1);
+        out.append(SIDE_CHARS[sideOrdinalOf(cell)]);
+    }
+
+    /**
+     * Append the decimal numeral for VALUE >= 0 to OUT, preceded by
+     * enough blanks to fill at least WIDTH characters.
+     */
+    private static void appendPadded(Appendable out, int value, int width)
+        throws IOException {
+        int digits, power;
+        for (digits = 1, power = 1; value / power >= 10; digits += 1) {
+            power *= 10;
         }
-        if (r < size) {
-            n += 1;
+        for (int k = digits; k < width; k += 1) {
+            out.append(' ');
         }
-        if (c < size) {
-            n += 1;
+        for (; power > 0; power /= 10) {
+            out.append((char) ('0' + value / power % 10));
         }
-        return n;
+    }
+
+    /**
+     * Characters denoting each Side in dumps, indexed by ordinal.
+     */
+    private static final char[] SIDE_CHARS = { '-', 'r', 'b' };
+
+    /**
+     * The line separator used by toDisplayString.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * Returns the number of neighbors of the square at row R, column C.
+     */
+    int neighbors(int r, int c) {
+        return neighbors(sqNum(r, c));
     }
 
     /**
      * Returns the number of neighbors of square #N.
      */
     int neighbors(int n) {
-        return neighbors(row(n), col(n));
+        return geometry().neighbors(n);
     }
 
+    /**
+     * Returns true iff OBJ is a Board of the same size as this one with
+     * the same contents in every square.  Move counts and undo histories
+     * are not compared.
+     */
     @Override
     public boolean equals(Object obj) {
-        if (!(obj instanceof Board)) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof Board)) {
             return false;
         } else {
             Board B = (Board) obj;
-            return this == obj;
+            return size() == B.size() && zobristKey() == B.zobristKey()
+                && Arrays.equals(getCells(), B.getCells());
         }
     }
 
     @Override
     public int hashCode() {
-        return numPieces();
+        return Long.hashCode(zobristKey());
     }
 
     /**
@@ -593,7 +1404,7 @@ class Board {
     /**
      * Take any action that has been set for a change in my state.
      */
-    private void announce() {
+    void announce() {
         _notifier.accept(this);
     }
 
@@ -604,65 +1415,72 @@ class Board {
     };
 
     /**
-     * 2d array to store that hist.
+     * The number of rows and of columns of this board.
      */
-    private Square[][] _squares;
+    private int _size;
 
     /**
-     * A read-only version of this Board.
+     * The packed contents (see Square.pack) of each square, indexed by
+     * square number.
      */
-    private ConstantBoard _readonlyBoard;
+    private byte[] _cells;
 
     /**
-     * Use _notifier.accept(B) to announce changes to this board.
+     * The neighbor structure shared by all boards of my size.
      */
-    private Consumer<Board> _notifier;
+    private Geometry _geometry;
 
+    /**
+     * The total number of spots on the board, maintained by setCell.
+     */
+    private int _numPieces;
 
     /**
-     * Represents enough of the state of a game to allow undoing and
-     * redoing of moves.
+     * The number of squares of each Side, indexed by ordinal, maintained
+     * by setCell.
      */
-    private class GameState {
-        /**
-         * A holder for the _cells and _active instance variables of this
-         * Model.
-         */
-        private Square[][] _savedSquares;
-        /**
-         * A holder for the _cells and _active instance variables of this
-         * Model.
-         */
-        private int savedNumMoves;
+    private final int[] _sideCounts = new int[Side.values().length];
 
-        /**
-         * A holder for the _cells and _active instance variables of this
-         * Model.
-         */
-        GameState() {
-            _savedSquares = new Square[size()][size()];
-            savedNumMoves = 0;
-        }
+    /**
+     * The bit sets returned by playable, indexed by Side ordinal (the
+     * entry for WHITE is unused), maintained by setCell.
+     */
+    private final long[][] _playable = new long[Side.values().length][];
 
-        /**
-         * A holder for the _cells and _active instance variables of this
-         * Model.
-         */
-        void saveState() {
-            deepCopy(getBoard(), _savedSquares);
-            savedNumMoves = getNumMoves();
-        }
+    /**
+     * The bit sets returned by critical, indexed like _playable, and
+     * maintained by setCell.
+     */
+    private final long[][] _critical = new long[Side.values().length][];
 
-        /**
-         * A holder for the _cells and _active instance variables of this
-         * Model.
-         */
-        void restoreState() {
-            deepCopy(_savedSquares, _squares);
-            _numMoves = savedNumMoves;
+    /**
+     * _criticalCounts[S][C] is the number of critical squares with C
+     * neighbors of the Side with ordinal S.
+     */
+    private final int[][] _criticalCounts =
+        new int[Side.values().length][Geometry.MAX_NEIGHBORS + 1];
 
-        }
+    /**
+     * The Zobrist keys of the images of the current position under each
+     * symmetry (see symmetricKey), maintained by setCell.  _keys[0] is
+     * the key of the position itself.
+     */
+    private final long[] _keys = new long[SYMMETRIES];
 
-    }
+    /**
+     * Shift separating the square number from its previous contents in
+     * an _undoLog entry.
+     */
+    private static final int UNDO_SQUARE_SHIFT = 8;
+
+    /**
+     * A read-only version of this Board.
+     */
+    private ConstantBoard _readonlyBoard;
+
+    /**
+     * Use _notifier.accept(B) to announce changes to this board.
+     */
+    private Consumer<Board> _notifier;
 
 }
@@ -0,0 +1,391 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static jump61.Side.*;
+import static jump61.Square.CELL_MASK;
+import static jump61.Square.INITIAL_CELL;
+import static jump61.Square.pack;
+import static jump61.Square.sideOrdinalOf;
+import static jump61.Square.spotsOf;
+
+/**
+ * A batch of many independent Jump61 games on boards of the same size,
+ * for self-play and the generation of training data.  Rather than one
+ * Board object per game, a BoardBatch holds the state of all its games
+ * in a few primitive arrays (a structure of arrays): the packed squares
+ * (see Square.pack) of game #B are _cells[B * N * N] through
+ * _cells[B * N * N + N * N - 1], and its spot and side counts are
+ * element B of _numPieces, _redCounts, and _blueCounts.  There is no
+ * undo history.
+ * <p>
+ * Each call to step makes one move in each game and resolves its
+ * cascade exactly as Board.addSpot does.  The games are independent, so
+ * parallelStep divides them among the threads of the common fork-join
+ * pool in chunks of CHUNK games, each chunk with its own work queue.
+ *
+ * @author Bernie Miao
+ */
+final class BoardBatch {
+
+    /**
+     * A batch of COUNT games on N x N boards, each at its initial
+     * position.  COUNT must be at least 1, and all COUNT boards must fit
+     * in a single array.
+     */
+    BoardBatch(int N, int count) {
+        if (N < 2 || N > Defaults.MAX_BOARD_SIZE) {
+            throw GameException.error("bad board size: %d", N);
+        }
+        if (count < 1) {
+            throw GameException.error("bad number of games: %d", count);
+        }
+        _size = N;
+        _numSquares = N * N;
+        _count = count;
+        _geometry = Geometry.of(N);
+        try {
+            _cells = new byte[Math.multiplyExact(count, _numSquares)];
+        } catch (ArithmeticException excp) {
+            throw GameException.error("too many games of size %d: %d",
+                                      N, count);
+        }
+        _numPieces = new int[count];
+        _redCounts = new int[count];
+        _blueCounts = new int[count];
+        _scratch = new Scratch[(count + CHUNK - 1) / CHUNK];
+        for (int k = 0; k < _scratch.length; k += 1) {
+            _scratch[k] = new Scratch();
+        }
+        clear();
+    }
+
+    /**
+     * Return the number of rows and of columns of my boards.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return the number of games in this batch.
+     */
+    int count() {
+        return _count;
+    }
+
+    /**
+     * Return all games to their initial positions.
+     */
+    void clear() {
+        Arrays.fill(_cells, (byte) INITIAL_CELL);
+        Arrays.fill(_numPieces, _numSquares);
+        Arrays.fill(_redCounts, 0);
+        Arrays.fill(_blueCounts, 0);
+    }
+
+    /**
+     * Return game #B to its initial position.
+     */
+    void clear(int b) {
+        int base = b * _numSquares;
+        Arrays.fill(_cells, base, base + _numSquares, (byte) INITIAL_CELL);
+        _numPieces[b] = _numSquares;
+        _redCounts[b] = _blueCounts[b] = 0;
+    }
+
+    /**
+     * Set game #B to the position on BOARD, which must be of my size.
+     */
+    void set(int b, Board board) {
+        if (board.size() != _size) {
+            throw GameException.error("board size mismatch");
+        }
+        System.arraycopy(board.getCells(), 0, _cells, b * _numSquares,
+                         _numSquares);
+        _numPieces[b] = board.numPieces();
+        _redCounts[b] = board.numOfSide(RED);
+        _blueCounts[b] = board.numOfSide(BLUE);
+    }
+
+    /**
+     * Return a new Board holding the position of game #B.
+     */
+    Board toBoard(int b) {
+        Board result = new Board(_size);
+        result.setContents(_size, Arrays.copyOfRange(
+            _cells, b * _numSquares, (b + 1) * _numSquares));
+        return result;
+    }
+
+    /**
+     * Return the packed square #N of game #B.
+     */
+    int cell(int b, int n) {
+        return _cells[b * _numSquares + n] & CELL_MASK;
+    }
+
+    /**
+     * Return the total number of spots in game #B.
+     */
+    int numPieces(int b) {
+        return _numPieces[b];
+    }
+
+    /**
+     * Return the side to move in game #B.
+     */
+    Side whoseMove(int b) {
+        return ((_numPieces[b] + _size) & 1) == 0 ? RED : BLUE;
+    }
+
+    /**
+     * Return the winner of game #B, or null if it is not over.
+     */
+    Side getWinner(int b) {
+        if (_redCounts[b] == _numSquares) {
+            return RED;
+        } else if (_blueCounts[b] == _numSquares) {
+            return BLUE;
+        }
+        return null;
+    }
+
+    /**
+     * Return true iff the side to move in game #B may add a spot to
+     * square #N.
+     */
+    boolean isLegal(int b, int n) {
+        int side = sideOrdinalOf(_cells[b * _numSquares + n]);
+        return getWinner(b) == null
+            && (side == WHITE.ordinal()
+                || side == whoseMove(b).ordinal());
+    }
+
+    /**
+     * Make one move in each game in which the game is not over and
+     * MOVES[B] >= 0: the side to move in game #B adds a spot to square
+     * #MOVES[B], which must be legal.  Returns the number of games won
+     * by these moves.
+     */
+    int step(int[] moves) {
+        return step(moves, 0, _count, _scratch[0]);
+    }
+
+    /**
+     * As for step(MOVES), but dividing the games among the threads of
+     * the common fork-join pool.
+     */
+    int parallelStep(int[] moves) {
+        int chunks = _scratch.length;
+        if (chunks == 1) {
+            return step(moves);
+        }
+        ForkJoinPool.commonPool().invoke(new Steps(moves, 0, chunks));
+        int won = 0;
+        for (Scratch scratch : _scratch) {
+            won += scratch._won;
+        }
+        return won;
+    }
+
+    /**
+     * Make the moves MOVES[LO .. HI-1] as for step(MOVES), using the
+     * work space SCRATCH, and return the number of games won.
+     */
+    private int step(int[] moves, int lo, int hi, Scratch scratch) {
+        int won = 0;
+        for (int b = lo; b < hi; b += 1) {
+            if (moves[b] >= 0 && getWinner(b) == null) {
+                addSpot(b, moves[b], scratch);
+                if (getWinner(b) != null) {
+                    won += 1;
+                }
+            }
+        }
+        scratch._won = won;
+        return won;
+    }
+
+    /**
+     * Add a spot for the side to move in game #B at square #N, and do
+     * all resulting jumping in the same order as Board.jump, using the
+     * work space SCRATCH.
+     */
+    private void addSpot(int b, int n, Scratch scratch) {
+        byte[] cells = _cells;
+        Geometry geometry = _geometry;
+        int base = b * _numSquares;
+        Side player = whoseMove(b);
+        put(b, base + n, pack(player, spotsOf(cells[base + n]) + 1));
+        if (getWinner(b) != null
+            || spotsOf(cells[base + n]) <= geometry.neighbors(n)) {
+            return;
+        }
+
+        int[] queue = scratch._queue;
+        long[] queued = scratch._queued;
+        int head = 0, length = 1;
+        queue[0] = n;
+        queued[n >>> 6] |= 1L << n;
+        while (length > 0 && getWinner(b) == null) {
+            int process = queue[head];
+            queued[process >>> 6] &= ~(1L << process);
+            head = head + 1 == _numSquares ? 0 : head + 1;
+            length -= 1;
+            int capacity = geometry.neighbors(process);
+            int spots = spotsOf(cells[base + process]);
+            if (spots <= capacity) {
+                continue;
+            }
+            for (int k = 0; k < capacity; k += 1) {
+                int m = geometry.neighbor(process, k);
+                int more = spotsOf(cells[base + m]) + 1;
+                put(b, base + m, pack(player, more));
+                if (more > geometry.neighbors(m)
+                    && (queued[m >>> 6] & (1L << m)) == 0) {
+                    queued[m >>> 6] |= 1L << m;
+                    int tail = head + length;
+                    queue[tail >= _numSquares ? tail - _numSquares : tail]
+                        = m;
+                    length += 1;
+                }
+            }
+            put(b, base + process,
+                pack(player, spotsOf(cells[base + process])
+                     - capacity));
+        }
+        while (length > 0) {
+            int m = queue[head];
+            queued[m >>> 6] &= ~(1L << m);
+            head = head + 1 == _numSquares ? 0 : head + 1;
+            length -= 1;
+        }
+    }
+
+    /**
+     * Set _cells[I], which belongs to game #B, to the packed square
+     * CELL, updating the counts of game #B.
+     */
+    private void put(int b, int i, int cell) {
+        int old = _cells[i] & CELL_MASK;
+        _cells[i] = (byte) cell;
+        _numPieces[b] += spotsOf(cell) - spotsOf(old);
+        int was = sideOrdinalOf(old), now = sideOrdinalOf(cell);
+        if (was != now) {
+            if (was == RED.ordinal()) {
+                _redCounts[b] -= 1;
+            } else if (was == BLUE.ordinal()) {
+                _blueCounts[b] -= 1;
+            }
+            if (now == RED.ordinal()) {
+                _redCounts[b] += 1;
+            } else if (now == BLUE.ordinal()) {
+                _blueCounts[b] += 1;
+            }
+        }
+    }
+
+    /**
+     * A task making the moves of a range of chunks, dividing it among
+     * subtasks.
+     */
+    private final class Steps extends RecursiveAction {
+
+        /**
+         * A task making the moves MOVES for chunks LO .. HI-1.
+         */
+        Steps(int[] moves, int lo, int hi) {
+            _moves = moves;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                step(_moves, _lo * CHUNK, Math.min(_count, _hi * CHUNK),
+                     _scratch[_lo]);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Steps(_moves, _lo, mid),
+                          new Steps(_moves, mid, _hi));
+            }
+        }
+
+        /**
+         * The moves to make.
+         */
+        private final int[] _moves;
+        /**
+         * The range of chunks handled.
+         */
+        private final int _lo, _hi;
+    }
+
+    /**
+     * The work space of one chunk of games.
+     */
+    private final class Scratch {
+        /**
+         * Work queue of squares to jump, used as a ring buffer.
+         */
+        private final int[] _queue = new int[_numSquares];
+        /**
+         * Bit set of the squares in _queue.
+         */
+        private final long[] _queued = new long[(_numSquares + 63) >>> 6];
+        /**
+         * The number of games won by the last step of this chunk.
+         */
+        private int _won;
+    }
+
+    /**
+     * The number of games in each chunk handled by one task in
+     * parallelStep.
+     */
+    static final int CHUNK = 64;
+
+    /**
+     * The number of rows and of columns of each board.
+     */
+    private final int _size;
+
+    /**
+     * The number of squares on each board.
+     */
+    private final int _numSquares;
+
+    /**
+     * The number of games.
+     */
+    private final int _count;
+
+    /**
+     * The neighbor structure of the boards.
+     */
+    private final Geometry _geometry;
+
+    /**
+     * The packed squares of all games, game by game.
+     */
+    private final byte[] _cells;
+
+    /**
+     * The total number of spots in each game.
+     */
+    private final int[] _numPieces;
+
+    /**
+     * The numbers of red and of blue squares in each game.
+     */
+    private final int[] _redCounts, _blueCounts;
+
+    /**
+     * Work space for each chunk of CHUNK games.
+     */
+    private final Scratch[] _scratch;
+}
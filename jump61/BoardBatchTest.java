@@ -0,0 +1,106 @@
+package jump61;
+
+import static jump61.Side.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of BoardBatches.  Checks that the games in a batch agree
+ * with the same games played on Boards.
+ *
+ * @author Bernie Miao
+ */
+
+public class BoardBatchTest {
+
+    @Test
+    public void matchesBoard() {
+        Random rand = new Random(17);
+        for (int N : new int[] { 2, 3, 5, 8 }) {
+            int count = 2 * BoardBatch.CHUNK + 3;
+            BoardBatch games = new BoardBatch(N, count);
+            Board[] boards = new Board[count];
+            for (int b = 0; b < count; b += 1) {
+                boards[b] = new Board(N);
+            }
+            int[] moves = new int[count];
+            for (int step = 0; step < 40 * N; step += 1) {
+                int won = 0;
+                for (int b = 0; b < count; b += 1) {
+                    Board B = boards[b];
+                    if (B.getWinner() != null || rand.nextInt(10) == 0) {
+                        moves[b] = -1;
+                        continue;
+                    }
+                    Side player = B.whoseMove();
+                    assertEquals("whose move", player, games.whoseMove(b));
+                    int n;
+                    do {
+                        n = rand.nextInt(N * N);
+                    } while (!B.isLegal(player, n));
+                    assertTrue("legal", games.isLegal(b, n));
+                    moves[b] = n;
+                    B.addSpot(player, n);
+                    if (B.getWinner() != null) {
+                        won += 1;
+                    }
+                }
+                int result = step % 2 == 0 ? games.step(moves)
+                    : games.parallelStep(moves);
+                assertEquals("games won", won, result);
+                for (int b = 0; b < count; b += 1) {
+                    String msg = String.format("N=%d step %d game %d",
+                                               N, step, b);
+                    assertArrayEquals(msg, boards[b].getCells(),
+                                      games.toBoard(b).getCells());
+                    assertEquals(msg, boards[b].numPieces(),
+                                 games.numPieces(b));
+                    assertEquals(msg, boards[b].getWinner(),
+                                 games.getWinner(b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void setAndClear() {
+        Board B = new Board(4);
+        B.addSpot(RED, 1, 1);
+        B.addSpot(BLUE, 2, 2);
+        BoardBatch games = new BoardBatch(4, 3);
+        games.set(1, B);
+        assertEquals(B, games.toBoard(1));
+        assertEquals(RED, games.whoseMove(1));
+        assertFalse(games.isLegal(1, B.sqNum(2, 2)));
+        assertEquals(new Board(4), games.toBoard(0));
+        games.clear(1);
+        assertEquals(new Board(4), games.toBoard(1));
+    }
+
+    @Test
+    public void badBatches() {
+        int[][] bad = {
+            { 1, 3 }, { Defaults.MAX_BOARD_SIZE + 1, 3 }, { 4, 0 },
+            { 4, -1 }, { 1024, 4097 }, { 1024, Integer.MAX_VALUE },
+        };
+        for (int[] args : bad) {
+            try {
+                new BoardBatch(args[0], args[1]);
+                fail("accepted " + args[1] + " games of size " + args[0]);
+            } catch (GameException excp) {
+                /* Expected. */
+            }
+        }
+        BoardBatch games = new BoardBatch(4, 1);
+        try {
+            games.set(0, new Board(5));
+            fail("accepted a board of the wrong size");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+    }
+}
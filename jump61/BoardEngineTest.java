@@ -0,0 +1,225 @@
+package jump61;
+
+import static jump61.Side.*;
+import static jump61.BoardTest.checkCounts;
+import static jump61.BoardTest.checkPlayable;
+import static jump61.BoardTest.playAndUndo;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the ways Board carries out moves internally, which
+ * other kinds of board (such as BitBoard) do not share, and so which
+ * are not run for them as the tests of BoardTest are.
+ *
+ * @author Bernie Miao
+ */
+
+public class BoardEngineTest {
+
+    @Test
+    public void testLargeBoard() {
+        int N = Geometry.TABLED_SIZE + 1;
+        Board B = new Board(N);
+        Geometry geometry = B.geometry();
+        assertFalse("large geometry tabled", geometry.tabled());
+        for (int n = 0; n < N * N; n += 1) {
+            int r = n / N, c = n % N, k;
+            k = 0;
+            for (int[] d : new int[][] { {1, 0}, {-1, 0}, {0, 1}, {0, -1} }) {
+                if (0 <= r + d[0] && r + d[0] < N
+                    && 0 <= c + d[1] && c + d[1] < N) {
+                    assertEquals("bad neighbor", (r + d[0]) * N + c + d[1],
+                            geometry.neighbor(n, k));
+                    k += 1;
+                }
+            }
+            assertEquals("bad capacity", k, geometry.neighbors(n));
+        }
+        playAndUndo(B, new Random(12), 1000);
+        assertEquals("undo failed", new Board(N), B);
+        byte[] cells = new byte[N * N];
+        for (int n = 0; n < N * N; n += 1) {
+            cells[n] = (byte) Square.pack(n == 0 ? RED : BLUE,
+                                          geometry.neighbors(n));
+        }
+        B.setContents(N, cells);
+        B.addSpot(RED, 0);
+        assertEquals("cascade did not finish", RED, B.getWinner());
+        checkCounts("after cascade", B);
+    }
+
+    @Test
+    public void testWaveCascade() {
+        Random rand = new Random(13);
+        for (int N : new int[] { 2, 3, 6, 11 }) {
+            Board B = new Board(N), W = new Board(N);
+            W.setWaveThreshold(1);
+            MoveDelta dB = new MoveDelta(), dW = new MoveDelta();
+            for (int game = 0; game < 2; game += 1) {
+                for (int k = 0; k < 60 && B.getWinner() == null; k += 1) {
+                    int n;
+                    do {
+                        n = rand.nextInt(N * N);
+                    } while (!B.isLegal(B.whoseMove(), n));
+                    B.addSpot(B.whoseMove(), n, dB);
+                    W.addSpot(W.whoseMove(), n, dW);
+                    assertEquals("wave result differs", B, W);
+                    assertEquals("wave jumps differ", dB.explosions(),
+                            dW.explosions());
+                    assertEquals("wave depth differs", dB.depth(),
+                            dW.depth());
+                    assertEquals("wave changes differ", dB.size(),
+                            dW.size());
+                    checkCounts("wave counts", W);
+                    checkPlayable("wave playable", W);
+                    for (int t = 0; t < Geometry.SYMMETRIES; t += 1) {
+                        assertEquals("wave key differs", B.symmetricKey(t),
+                                W.symmetricKey(t));
+                    }
+                }
+                while (W.getNumMoves() > 0) {
+                    B.undo();
+                    W.undo();
+                    assertEquals("wave undo differs", B, W);
+                }
+            }
+        }
+        int N = 16;
+        byte[] cells = new byte[N * N];
+        Board B = new Board(N), W = new Board(N);
+        W.setWaveThreshold(8);
+        for (int trial = 0; trial < 5; trial += 1) {
+            for (int n = 0; n < N * N; n += 1) {
+                cells[n] = (byte) Square.pack(rand.nextInt(4) == 0 ? RED : BLUE,
+                        B.geometry().neighbors(n) - rand.nextInt(2));
+            }
+            cells[0] = (byte) Square.pack(RED, 2);
+            B.setContents(N, cells);
+            W.setContents(N, cells);
+            B.addSpot(RED, 0);
+            W.addSpot(RED, 0);
+            assertEquals("flood differs", B, W);
+            W.undo();
+            assertArrayEquals("flood undo differs", cells, W.getCells());
+        }
+    }
+
+    @Test
+    public void testKernels() {
+        Random rand = new Random(18);
+        for (int N = 2; N <= CascadeKernel.MAX_SIZE + 1; N += 1) {
+            Board G = new Board(N), K = new Board(N);
+            G.setSpecialized(false);
+            MoveDelta dG = new MoveDelta(), dK = new MoveDelta();
+            for (int game = 0; game < 2; game += 1) {
+                while (K.getWinner() == null) {
+                    int n;
+                    do {
+                        n = rand.nextInt(N * N);
+                    } while (!K.isLegal(K.whoseMove(), n));
+                    G.addSpot(G.whoseMove(), n, dG);
+                    K.addSpot(K.whoseMove(), n, dK);
+                    assertEquals("kernel result differs", G, K);
+                    assertEquals("kernel jumps differ", dG.explosions(),
+                            dK.explosions());
+                    assertEquals("kernel depth differs", dG.depth(),
+                            dK.depth());
+                    checkCounts("kernel counts", K);
+                    checkPlayable("kernel playable", K);
+                    for (int t = 0; t < Geometry.SYMMETRIES; t += 1) {
+                        assertEquals("kernel key differs",
+                                G.symmetricKey(t), K.symmetricKey(t));
+                    }
+                }
+                while (K.getNumMoves() > 0) {
+                    G.undo();
+                    K.undo();
+                    assertEquals("kernel undo differs", G, K);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCellScan() {
+        Random rand = new Random(19);
+        byte[] cells = new byte[300];
+        for (int trial = 0; trial < 200; trial += 1) {
+            for (int n = 0; n < cells.length; n += 1) {
+                cells[n] = (byte) Square.pack(Side.values()[rand.nextInt(3)],
+                                              1 + rand.nextInt(
+                                                  trial < 100 ? 5 : 63));
+            }
+            int from = rand.nextInt(cells.length);
+            int to = from + rand.nextInt(Math.min(65, cells.length - from));
+            int spots = rand.nextInt(6);
+            for (int side = 0; side < 3; side += 1) {
+                assertEquals("side mask",
+                        CellScan.sideMaskScalar(cells, from, to, side),
+                        CellScan.sideMask(cells, from, to, side));
+                assertEquals("count",
+                        Long.bitCount(CellScan.sideMaskScalar(cells, from,
+                                                              to, side)),
+                        CellScan.count(cells, from, to, side));
+            }
+            assertEquals("spots mask",
+                    CellScan.spotsMaskScalar(cells, from, to, spots),
+                    CellScan.spotsMask(cells, from, to, spots));
+            assertEquals("spots", CellScan.spotsScalar(cells, 0, to),
+                    CellScan.spots(cells, 0, to));
+        }
+        for (int N : new int[] { 3, 9, 17 }) {
+            Board B = new Board(N);
+            byte[] position = new byte[N * N];
+            for (int n = 0; n < N * N; n += 1) {
+                position[n] = (byte) Square.pack(
+                    Side.values()[rand.nextInt(3)],
+                    1 + rand.nextInt(B.geometry().neighbors(n)));
+            }
+            B.setContents(N, position);
+            checkCounts("scanned counts", B);
+            checkPlayable("scanned playable", B);
+        }
+    }
+
+    @Test
+    public void testCascadeCache() {
+        for (int N : new int[] { 3, 6, 10 }) {
+            Board B = new Board(N), C = new Board(N);
+            CascadeCache cache = new CascadeCache(64, N * N);
+            C.setCascadeCache(cache);
+            for (int game = 0; game < 6; game += 1) {
+                Random rand = new Random(game % 3);
+                for (int k = 0; k < 20 * N && B.getWinner() == null;
+                     k += 1) {
+                    int n;
+                    do {
+                        n = rand.nextInt(N * N);
+                    } while (!B.isLegal(B.whoseMove(), n));
+                    B.addSpot(B.whoseMove(), n);
+                    C.addSpot(C.whoseMove(), n);
+                    assertEquals("cached result differs", B, C);
+                    assertEquals("cached key differs", B.zobristKey(),
+                            C.zobristKey());
+                    checkCounts("cached counts", C);
+                    checkPlayable("cached playable", C);
+                }
+                while (C.getNumMoves() > 0) {
+                    B.undo();
+                    C.undo();
+                    assertEquals("cached undo differs", B, C);
+                }
+            }
+            assertTrue("no hits", cache.hits() > 0);
+            assertTrue("no misses", cache.misses() > 0);
+            assertTrue("too many entries",
+                    cache.size() <= 64 && cache.size() > 0);
+        }
+    }
+
+}
@@ -3,6 +3,10 @@ package jump61;
 
 import static jump61.Side.*;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -16,9 +20,16 @@ import static org.junit.Assert.*;
 public class BoardTest {
     private static final String NL = System.getProperty("line.separator");
 
+    /**
+     * Return a new N x N board of the kind under test.
+     */
+    Board newBoard(int N) {
+        return new Board(N);
+    }
+
     @Test
     public void simple2x2() {
-        Board B = new Board(2);
+        Board B = newBoard(2);
         System.out.println("Upon initialization, 1, 2, has value:");
         System.out.println(B.get(1, 2).getSpots());
         B.addSpot(RED, 1, 1);
@@ -38,7 +49,7 @@ public class BoardTest {
 
     @Test
     public void testG() {
-        Board b = new Board(3);
+        Board b = newBoard(3);
         b.set(1, 1, 2, RED);
         b.set(1, 2, 3, BLUE);
         b.set(2, 1, 1, BLUE);
@@ -54,7 +65,7 @@ public class BoardTest {
 
     @Test
     public void jumpTest1() {
-        Board B = new Board(3);
+        Board B = newBoard(3);
         B.set(1, 1, 1, BLUE);
         B.set(1, 2, 3, RED);
         B.set(1, 3, 2, BLUE);
@@ -75,7 +86,7 @@ public class BoardTest {
 
     @Test
     public void testSize() {
-        Board B = new Board(5);
+        Board B = newBoard(5);
         assertEquals("bad length", 5, B.size());
         ConstantBoard C = new ConstantBoard(B);
         assertEquals("bad length", 5, C.size());
@@ -85,7 +96,7 @@ public class BoardTest {
 
     @Test
     public void testSet() {
-        Board B = new Board(5);
+        Board B = newBoard(5);
         B.set(2, 2, 1, RED);
         assertEquals("wrong number of spots", 1, B.get(2, 2).getSpots());
         assertEquals("wrong color", RED, B.get(2, 2).getSide());
@@ -94,9 +105,361 @@ public class BoardTest {
         assertEquals("wrong count", 24, B.numOfSide(WHITE));
     }
 
+    @Test
+    public void testTooManySpots() {
+        Board B = newBoard(3);
+        B.set(1, 1, 2, RED);
+        try {
+            B.set(2, 2, Square.MAX_SPOTS + 1, BLUE);
+            fail("set too many spots");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+        checkBoard("after failed set", B, 1, 1, 2, RED);
+        try {
+            Square.square(RED, Square.MAX_SPOTS + 1);
+            fail("made square with too many spots");
+        } catch (GameException excp) {
+            /* Expected. */
+        }
+        assertSame("squares not unique", Square.square(BLUE, Square.MAX_SPOTS),
+                   Square.square(Square.pack(BLUE, Square.MAX_SPOTS)));
+    }
+
+    @Test
+    public void testReadonlyBoard() {
+        Board B = newBoard(3);
+        Board R = B.readonlyBoard();
+        assertNotNull("no readonly board", R);
+        assertSame("readonly board not kept", R, B.readonlyBoard());
+        B.set(1, 1, 2, RED);
+        assertEquals("change not seen", RED, R.get(1, 1).getSide());
+        assertEquals("change not seen", 2, R.get(1, 1).getSpots());
+    }
+
+    @Test
+    public void testNeighbors() {
+        Board B = newBoard(4);
+        assertSame("geometry not shared", B.geometry(),
+                newBoard(4).geometry());
+        assertEquals("corner", 2, B.neighbors(1, 1));
+        assertEquals("edge", 3, B.neighbors(1, 3));
+        assertEquals("edge", 3, B.neighbors(3, 4));
+        assertEquals("interior", 4, B.neighbors(2, 3));
+        Geometry G = B.geometry();
+        assertEquals("below", B.sqNum(3, 3), G.neighbor(B.sqNum(2, 3), 0));
+        assertEquals("left", B.sqNum(4, 3), G.neighbor(B.sqNum(4, 4), 1));
+    }
+
+    @Test
+    public void testCopyFromView() {
+        Board B = newBoard(4);
+        B.addSpot(RED, 1, 1);
+        B.addSpot(BLUE, 4, 4);
+        B.addSpot(RED, 1, 1);
+        Board D = new Board(new ConstantBoard(B));
+        for (int n = 0; n < 16; n += 1) {
+            assertSame("square " + n, B.get(n), D.get(n));
+        }
+        assertEquals("wrong count", 3, D.numOfSide(RED));
+        assertEquals("wrong count", B.numPieces(), D.numPieces());
+    }
+
+    @Test
+    public void testCounts() {
+        Random rand = new Random(61);
+        Board B = newBoard(5);
+        for (int k = 0; k < 200 && B.getWinner() == null; k += 1) {
+            if (k % 7 == 6) {
+                B.undo();
+            } else {
+                playRandom(B, rand);
+            }
+            checkCounts("move " + k, B);
+        }
+        B.set(3, 3, 0, RED);
+        checkCounts("after set", B);
+    }
+
+    @Test
+    public void testUndo() {
+        Board B = newBoard(4);
+        B.addSpot(RED, 1, 1);
+        B.addSpot(BLUE, 4, 4);
+        B.addSpot(RED, 1, 1);
+        assertEquals("moves", 3, B.getNumMoves());
+        B.set(3, 3, 2, BLUE);
+        B.undo();
+        checkBoard("#2U", B, 1, 1, 2, RED, 4, 4, 2, BLUE);
+        assertEquals("moves", 2, B.getNumMoves());
+        checkCounts("#2U", B);
+        B.undo();
+        B.undo();
+        checkBoard("#0U", B);
+        assertEquals("moves", 0, B.getNumMoves());
+    }
+
+    @Test
+    public void testUndoLimit() {
+        Board B = newBoard(6);
+        Random rand = new Random(3);
+        B.setUndoLimit(20);
+        Board previous = new Board(B);
+        for (int k = 0; k < 60 && B.getWinner() == null; k += 1) {
+            previous = new Board(B);
+            playRandom(B, rand);
+        }
+        B.undo();
+        assertArrayEquals("undo after forgetting old moves",
+                previous.getCells(), B.getCells());
+        checkCounts("after undo", B);
+    }
+
+    @Test
+    public void testKeys() {
+        Board A = newBoard(5);
+        Board B = newBoard(5);
+        assertEquals("empty boards", A, B);
+        assertEquals("empty key", 0, A.zobristKey());
+        A.addSpot(RED, 1, 1);
+        A.addSpot(BLUE, 5, 5);
+        A.addSpot(RED, 3, 3);
+        B.addSpot(RED, 3, 3);
+        B.addSpot(BLUE, 5, 5);
+        assertNotEquals("different positions", A, B);
+        assertNotEquals("different keys", A.zobristKey(), B.zobristKey());
+        B.addSpot(RED, 1, 1);
+        assertEquals("transposed positions", A, B);
+        assertEquals("transposed keys", A.zobristKey(), B.zobristKey());
+        assertEquals("hash codes", A.hashCode(), B.hashCode());
+        assertEquals("views", new ConstantBoard(A), B);
+        long key = A.zobristKey();
+        A.addSpot(BLUE, 2, 2);
+        A.undo();
+        assertEquals("key after undo", key, A.zobristKey());
+        assertNotEquals("different sizes", newBoard(4), newBoard(5));
+    }
+
+    @Test
+    public void testSymmetry() {
+        Board A = newBoard(5);
+        assertEquals("empty board symmetries", 0xff, A.symmetries());
+        A.addSpot(RED, 1, 2);
+        A.addSpot(BLUE, 3, 3);
+        A.addSpot(RED, 1, 2);
+        Board B = newBoard(5);
+        B.addSpot(RED, 4, 1);
+        B.addSpot(BLUE, 3, 3);
+        B.addSpot(RED, 4, 1);
+        assertNotEquals("rotated positions", A, B);
+        assertEquals("canonical keys", A.canonicalKey(), B.canonicalKey());
+        assertEquals("canonical forms", A.canonicalBoard(),
+                B.canonicalBoard());
+        assertEquals("canonical form key", A.canonicalKey(),
+                A.canonicalBoard().zobristKey());
+        assertEquals("no symmetries", 1, A.symmetries());
+        for (int n = 0; n < 25; n += 1) {
+            assertEquals("move mapping", n,
+                    A.fromCanonical(A.toCanonical(n)));
+            assertEquals("moves between symmetric positions",
+                    A.get(n), B.get(B.fromCanonical(A.toCanonical(n))));
+        }
+        Board C = newBoard(5);
+        C.addSpot(RED, 3, 3);
+        assertEquals("center move", 0xff, C.symmetries());
+        C.addSpot(BLUE, 1, 1);
+        assertEquals("diagonal", 1 | (1 << 6), C.symmetries());
+    }
+
+    @Test
+    public void testEncoding() {
+        PositionCodec codec = new PositionCodec();
+        Random rand = new Random(9);
+        long[] buffer = new long[PositionCodec.encodedLength(10) + 1];
+        for (int N = 2; N <= 10; N += 1) {
+            Board B = newBoard(N);
+            for (int k = 0; k < 3 * N && B.getWinner() == null; k += 1) {
+                playRandom(B, rand);
+            }
+            Board D = newBoard(3);
+            assertEquals("encoded length", PositionCodec.encodedLength(N),
+                    codec.encode(B, buffer, 1));
+            codec.decode(buffer, 1, D);
+            assertEquals("binary round trip", B, D);
+            assertEquals("decoded counts", B.numPieces(), D.numPieces());
+            String text = codec.toText(B);
+            D = newBoard(3);
+            codec.fromText(text, D);
+            assertEquals("text round trip " + text, B, D);
+            assertEquals("text", text, codec.toText(D));
+        }
+        Board B = newBoard(2);
+        codec.fromText("2:2r-/-1b", B);
+        checkBoard("text", B, 1, 1, 2, RED, 2, 2, 1, BLUE);
+        codec.fromText("2:3r1r/2r1r", B);
+        assertEquals("won position", RED, B.getWinner());
+        assertEquals("side to move", BLUE, B.whoseMove());
+        for (String bad : new String[] {
+            "", "2", "2:", "2:--/-", "2:--/---", "2:---/-", "2:0r-/--",
+            "2:2x-/--", "11:", "1:-", "2:--/--/", "2:3r-/--",
+            "3:---/-5b-/---", "3:-4r-/---/---", "2:3r1b/1r1r",
+        }) {
+            try {
+                codec.fromText(bad, B);
+                fail("accepted " + bad);
+            } catch (GameException excp) {
+                /* Expected. */
+            }
+        }
+        long[] code = codec.encode(newBoard(3));
+        code[1] = 3;
+        long[][] badCodes = {
+            new long[0], Arrays.copyOf(code, code.length - 1), code,
+        };
+        for (long[] bad : badCodes) {
+            try {
+                codec.decode(bad, 0, B);
+                fail("decoded " + Arrays.toString(bad));
+            } catch (GameException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testRendering() {
+        Board B = newBoard(2);
+        B.set(1, 2, 2, RED);
+        B.set(2, 1, 1, BLUE);
+        String nl = System.lineSeparator();
+        assertEquals("bad dump", "===\n    1- 2r \n    1b 1- \n===",
+                B.toString());
+        assertEquals("bad display",
+                " 1 1- 2r" + nl + " 2 1b 1-" + nl + "    1  2",
+                B.toDisplayString());
+        StringBuilder out = new StringBuilder("> ");
+        B.dump(out);
+        assertEquals("bad append", "> " + B.toString(), out.toString());
+        Board C = newBoard(10);
+        C.set(10, 10, 12, BLUE);
+        assertTrue("bad wide display",
+                C.toDisplayString().endsWith(
+                        "10 1- 1- 1- 1- 1- 1- 1- 1- 1- 12b" + nl
+                        + "    1  2  3  4  5  6  7  8  9 10"));
+    }
+
+    @Test
+    public void testPosition() {
+        Random rand = new Random(61);
+        for (int N = 2; N <= 7; N += 1) {
+            Board B = newBoard(N);
+            Position P = Position.initial(N);
+            assertEquals("bad initial position", Position.of(B), P);
+            while (B.getWinner() == null) {
+                Position parent = P;
+                byte[] before = parent.toCells();
+                int n;
+                do {
+                    n = rand.nextInt(N * N);
+                } while (!B.isLegal(B.whoseMove(), n));
+                assertTrue("legality differs", P.isLegal(B.whoseMove(), n));
+                B.addSpot(B.whoseMove(), n);
+                P = parent.play(n);
+                assertEquals("position differs", Position.of(B), P);
+                assertEquals("bad key", B.zobristKey(), P.zobristKey());
+                assertEquals("bad count", B.numOfSide(RED),
+                        P.numOfSide(RED));
+                assertEquals("bad winner", B.getWinner(), P.getWinner());
+                assertEquals("board differs", B, P.toBoard());
+                assertArrayEquals("parent modified", before,
+                        parent.toCells());
+                for (int r = 0; r < N; r += 1) {
+                    boolean same = Arrays.equals(
+                            Arrays.copyOfRange(before, r * N, r * N + N),
+                            Arrays.copyOfRange(P.toCells(), r * N,
+                                    r * N + N));
+                    assertEquals("row sharing", same, P.sharesRow(parent, r));
+                }
+            }
+        }
+        int N = 10;
+        byte[] cells = new byte[N * N];
+        for (int n = 0; n < N * N; n += 1) {
+            cells[n] = (byte) Square.pack(n % 3 == 0 ? RED : BLUE,
+                                          Geometry.of(N).neighbors(n));
+        }
+        Board B = newBoard(N);
+        B.setContents(N, cells);
+        Position P = Position.of(B).play(RED, 0);
+        B.addSpot(RED, 0);
+        assertEquals("flood differs", Position.of(B), P);
+    }
+
+    @Test
+    public void testPlayable() {
+        Random rand = new Random(14);
+        for (int N = 2; N <= 10; N += 1) {
+            Board B = newBoard(N);
+            for (int k = 0; k < 5 * N && B.getWinner() == null; k += 1) {
+                playRandom(B, rand);
+                checkPlayable("after move", B);
+            }
+            B.set(1, 1, 0, RED);
+            checkPlayable("after set", B);
+            Board C = newBoard(N);
+            C.copy(B);
+            checkPlayable("after copy", C);
+            while (B.getNumMoves() > 0) {
+                B.undo();
+                checkPlayable("after undo", B);
+            }
+        }
+    }
+
+    /**
+     * Checks that playable and nextPlayable agree with the squares of B
+     * for both sides, reporting failures with MSG.
+     */
+    static void checkPlayable(String msg, Board B) {
+        for (Side side : new Side[] { RED, BLUE }) {
+            long[] bits = B.playable(side);
+            int next = B.nextPlayable(side, 0);
+            for (int n = 0; n < B.size() * B.size(); n += 1) {
+                boolean playable = side.playableSquare(B.get(n).getSide());
+                assertEquals(msg, playable, (bits[n >>> 6] >>> n & 1) != 0);
+                if (playable) {
+                    assertEquals(msg, n, next);
+                    next = B.nextPlayable(side, n + 1);
+                }
+            }
+            assertEquals(msg, -1, next);
+        }
+    }
+
+    @Test
+    public void testAddSpotAllocation() {
+        if (!(ManagementFactory.getThreadMXBean()
+              instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        Board B = newBoard(6);
+        Random rand = new Random(7);
+        for (int k = 0; k < 500; k += 1) {
+            playAndUndo(B, rand, 40);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int moves = playAndUndo(B, rand, 40);
+        long after = threads.getCurrentThreadAllocatedBytes();
+        assertTrue("no moves made", moves > 0);
+        assertEquals("bytes allocated by addSpot", 0, after - before);
+    }
+
     @Test
     public void constantBoardCopyTest() {
-        Board B = new Board(5);
+        Board B = newBoard(5);
         B.addSpot(RED, 1, 1);
         B.addSpot(RED, 2, 2);
         B.addSpot(RED, 3, 3);
@@ -104,7 +467,7 @@ public class BoardTest {
 
     @Test
     public void testMove() {
-        Board B = new Board(6);
+        Board B = newBoard(6);
         checkBoard("#0", B);
         B.addSpot(RED, 1, 1);
         checkBoard("#1", B, 1, 1, 2, RED);
@@ -120,6 +483,128 @@ public class BoardTest {
         checkBoard("#0U", B);
     }
 
+    @Test
+    public void testDelta() {
+        Board B = newBoard(2);
+        MoveDelta delta = new MoveDelta();
+        B.set(1, 1, 2, RED);
+        B.set(1, 2, 2, RED);
+        B.addSpot(RED, 1, 1, delta);
+        assertEquals("jumps", 2, delta.explosions());
+        assertEquals("depth", 2, delta.depth());
+        assertEquals("changes", 3, delta.size());
+        for (int i = 0; i < delta.size(); i += 1) {
+            int n = delta.square(i);
+            assertEquals("new contents", Square.pack(B.get(n).getSide(),
+                                                     B.get(n).getSpots()),
+                         delta.newCell(i));
+        }
+
+        Random rand = new Random(16);
+        for (int N = 2; N <= 10; N += 1) {
+            B = newBoard(N);
+            Board ref = new Board(N);
+            while (B.getWinner() == null) {
+                Side player = B.whoseMove();
+                int n;
+                do {
+                    n = rand.nextInt(N * N);
+                } while (!B.isLegal(player, n));
+                byte[] before = B.getCells().clone();
+                B.addSpot(player, n, delta);
+                byte[] after = B.getCells();
+                assertEquals("player", player, delta.player());
+                assertEquals("move", n, delta.move());
+                int changed = 0;
+                for (int k = 0; k < N * N; k += 1) {
+                    if (before[k] != after[k]) {
+                        changed += 1;
+                    }
+                }
+                assertEquals("number of changes", changed, delta.size());
+                for (int i = 0; i < delta.size(); i += 1) {
+                    int k = delta.square(i);
+                    assertEquals("old contents", before[k], delta.oldCell(i));
+                    assertEquals("new contents", after[k], delta.newCell(i));
+                }
+                MoveDelta expected = ref.addSpot(player, n, new MoveDelta());
+                assertEquals("jumps", expected.explosions(),
+                             delta.explosions());
+                assertEquals("depth", expected.depth(), delta.depth());
+            }
+        }
+    }
+
+    /**
+     * Make a random legal move on B for the side to move, using RAND.
+     */
+    static void playRandom(Board B, Random rand) {
+        Side player = B.whoseMove();
+        int n;
+        do {
+            n = rand.nextInt(B.size() * B.size());
+        } while (!B.isLegal(player, n));
+        B.addSpot(player, n);
+    }
+
+    /**
+     * Make up to LIMIT random moves on B using RAND, stopping if the
+     * game is won, and then undo them all.  Returns the number of moves
+     * made.
+     */
+    static int playAndUndo(Board B, Random rand, int limit) {
+        int moves;
+        for (moves = 0; moves < limit && B.getWinner() == null;
+             moves += 1) {
+            playRandom(B, rand);
+        }
+        for (int k = 0; k < moves; k += 1) {
+            B.undo();
+        }
+        return moves;
+    }
+
+    /**
+     * Checks that the spot and side counts and key of B agree with its
+     * squares, reporting failures with MSG.
+     */
+    static void checkCounts(String msg, Board B) {
+        int pieces, red, blue;
+        long key = 0;
+        pieces = red = blue = 0;
+        for (int n = 0; n < B.size() * B.size(); n += 1) {
+            key ^= Zobrist.key(n, Square.pack(B.get(n).getSide(),
+                                              B.get(n).getSpots()));
+            pieces += B.get(n).getSpots();
+            red += B.get(n).getSide() == RED ? 1 : 0;
+            blue += B.get(n).getSide() == BLUE ? 1 : 0;
+        }
+        assertEquals(msg, key, B.zobristKey());
+        assertEquals(msg, pieces, B.numPieces());
+        assertEquals(msg, red, B.numOfSide(RED));
+        assertEquals(msg, blue, B.numOfSide(BLUE));
+        assertEquals(msg, B.size() * B.size() - red - blue,
+                B.numOfSide(WHITE));
+        for (Side side : new Side[] { RED, BLUE }) {
+            int[] counts = new int[Geometry.MAX_NEIGHBORS + 1];
+            long[] critical = B.critical(side);
+            for (int n = 0; n < B.size() * B.size(); n += 1) {
+                int capacity = B.geometry().neighbors(n);
+                boolean isCritical = B.get(n).getSide() == side
+                    && B.get(n).getSpots() == capacity;
+                assertEquals(msg + " critical", isCritical,
+                        (critical[n >>> 6] >>> n & 1) != 0);
+                counts[capacity] += isCritical ? 1 : 0;
+            }
+            for (int c = 2; c <= Geometry.MAX_NEIGHBORS; c += 1) {
+                assertEquals(msg + " critical count", counts[c],
+                        B.numCritical(side, c));
+            }
+            assertEquals(msg + " critical count",
+                    counts[2] + counts[3] + counts[4], B.numCritical(side));
+        }
+    }
+
     /**
      * Checks that B conforms to the description given by CONTENTS.
      * CONTENTS should be a sequence of groups of 4 items:
@@ -14,6 +14,8 @@ import java.util.ArrayList;
 import java.util.concurrent.ArrayBlockingQueue;
 
 import static jump61.Side.*;
+import static jump61.Square.sideOf;
+import static jump61.Square.spotsOf;
 
 /**
  * A GUI component that displays a Jump61 board, and converts mouse clicks
@@ -85,6 +87,28 @@ class BoardWidget extends Pad {
         _side = _board.size() * SQUARE_SEP + SEPARATOR_SIZE;
     }
 
+    /**
+     * Update my display to show BOARD, which has just been changed by the
+     * move recorded in DELTA, by applying DELTA to my saved copy and
+     * repainting only the squares it changed.  Returns false, doing
+     * nothing, if my saved copy is not of the same size as BOARD, in
+     * which case the caller should use update(BOARD).
+     */
+    synchronized boolean update(Board board, MoveDelta delta) {
+        if (_board == null || _board.size() != board.size()) {
+            return false;
+        }
+        for (int i = 0; i < delta.size(); i += 1) {
+            int n = delta.square(i), cell = delta.newCell(i);
+            int r = _board.row(n), c = _board.col(n);
+            _board.set(r, c, spotsOf(cell), sideOf(cell));
+            repaint(SQUARE_SIZE * (r - 1) + SEPARATOR_SIZE,
+                    SQUARE_SIZE * (c - 1) + SEPARATOR_SIZE,
+                    SQUARE_SIZE, SQUARE_SIZE);
+        }
+        return true;
+    }
+
     @Override
     public Dimension getPreferredSize() {
         return new Dimension(_side, _side);
@@ -0,0 +1,178 @@
+package jump61;
+
+import java.util.Random;
+
+import static jump61.Side.*;
+
+/**
+ * Reports the speed of Board's cascade engine as the board grows.  For
+ * each size, it times two workloads:
+ * <ul>
+ * <li> a flood: every square starts at capacity, all blue but a red
+ *      corner, and red adds a spot to the corner, so that a single
+ *      cascade sweeps the whole board.  The number of jumps in a flood
+ *      grows much faster than the number of squares, so floods are only
+ *      timed up to FLOOD_LIMIT.
+ * <li> dense play: random legal moves from random positions in which
+ *      every square is occupied, so that most moves cause cascades.
+ * <li> batch play: random legal moves in BATCH_GAMES games at once,
+ *      each from the initial position, in a BoardBatch, stepping all
+ *      games in parallel.  Only timed up to BATCH_LIMIT.
+ * </ul>
+ * Usage: java jump61.CascadeBenchmark [MAXSIZE [SECONDS]]
+ *
+ * @author Bernie Miao
+ */
+class CascadeBenchmark {
+
+    /**
+     * Smallest size measured.
+     */
+    private static final int MIN_SIZE = 8;
+
+    /**
+     * Largest size for which floods are timed.
+     */
+    private static final int FLOOD_LIMIT = 256;
+
+    /**
+     * Random moves per timed round of dense play.
+     */
+    static final int RANDOM_MOVES = 10000;
+
+    /**
+     * The number of games in the batch workload.
+     */
+    private static final int BATCH_GAMES = 1024;
+
+    /**
+     * Largest size for which batch play is timed.
+     */
+    private static final int BATCH_LIMIT = 64;
+
+    /**
+     * Run the benchmark as described in the class comment, with
+     * command-line arguments ARGS.
+     */
+    public static void main(String... args) {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0])
+            : Defaults.MAX_BOARD_SIZE;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        long budget = (long) (seconds * 1e9);
+
+        System.out.printf("%6s %10s %12s %14s %14s%n", "size", "squares",
+                          "flood (ms)", "dense mv/s", "batch mv/s");
+        for (int N = MIN_SIZE; N <= maxSize; N *= 2) {
+            Board board = new Board(N);
+            board.setUndoLimit(0);
+            String flood = "-";
+            if (N <= FLOOD_LIMIT) {
+                byte[] cells = floodCells(N, board.geometry());
+                double floodTime = time(budget, () -> {
+                    board.setContents(board.size(), cells);
+                    board.addSpot(RED, 0);
+                });
+                flood = String.format("%.3f", floodTime * 1e3);
+            }
+            Random rand = new Random(N);
+            setDense(board, rand);
+            double denseTime = time(budget, () -> playDense(board, rand));
+            String batch = "-";
+            if (N <= BATCH_LIMIT) {
+                BoardBatch games = new BoardBatch(N, BATCH_GAMES);
+                int[] moves = new int[BATCH_GAMES];
+                double batchTime = time(budget,
+                                        () -> playBatch(games, moves, rand));
+                batch = String.format("%.3e", BATCH_GAMES / batchTime);
+            }
+            System.out.printf("%6d %10d %12s %14.3e %14s%n", N, N * N, flood,
+                              RANDOM_MOVES / denseTime, batch);
+        }
+    }
+
+    /**
+     * Return the packed squares of the flooding position on an N x N
+     * board with neighbor structure GEOMETRY.
+     */
+    private static byte[] floodCells(int N, Geometry geometry) {
+        byte[] cells = new byte[N * N];
+        for (int n = 0; n < N * N; n += 1) {
+            cells[n] = (byte) Square.pack(n == 0 ? RED : BLUE,
+                                          geometry.neighbors(n));
+        }
+        return cells;
+    }
+
+    /**
+     * Set BOARD to a random position, chosen using RAND, in which every
+     * square is red or blue and holds from 1 spot up to its capacity.
+     */
+    static void setDense(Board board, Random rand) {
+        int N = board.size();
+        Geometry geometry = board.geometry();
+        byte[] cells = new byte[N * N];
+        for (int n = 0; n < N * N; n += 1) {
+            cells[n] = (byte) Square.pack(rand.nextBoolean() ? RED : BLUE,
+                                          1 + rand.nextInt(
+                                              geometry.neighbors(n)));
+        }
+        board.setContents(N, cells);
+    }
+
+    /**
+     * Make RANDOM_MOVES random legal moves on BOARD using RAND, starting
+     * over from a new dense position whenever a game ends.
+     */
+    static void playDense(Board board, Random rand) {
+        int numSquares = board.size() * board.size();
+        for (int k = 0; k < RANDOM_MOVES; k += 1) {
+            while (board.getWinner() != null) {
+                setDense(board, rand);
+            }
+            Side player = board.whoseMove();
+            int n;
+            do {
+                n = rand.nextInt(numSquares);
+            } while (!board.isLegal(player, n));
+            board.addSpot(player, n);
+        }
+    }
+
+    /**
+     * Make one random legal move using RAND in each game of GAMES,
+     * using MOVES to hold the moves, and starting over from the initial
+     * position in each game that has ended.
+     */
+    private static void playBatch(BoardBatch games, int[] moves,
+                                  Random rand) {
+        int numSquares = games.size() * games.size();
+        for (int b = 0; b < games.count(); b += 1) {
+            if (games.getWinner(b) != null) {
+                games.clear(b);
+            }
+            int n;
+            do {
+                n = rand.nextInt(numSquares);
+            } while (!games.isLegal(b, n));
+            moves[b] = n;
+        }
+        games.parallelStep(moves);
+    }
+
+    /**
+     * Return the average time in seconds of one run of TASK, running it
+     * once to warm up and then repeatedly for about BUDGET nanoseconds.
+     */
+    static double time(long budget, Runnable task) {
+        task.run();
+        long start = System.nanoTime();
+        long elapsed;
+        int runs = 0;
+        do {
+            task.run();
+            runs += 1;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < budget);
+        return elapsed * 1e-9 / runs;
+    }
+}
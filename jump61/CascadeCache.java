@@ -0,0 +1,216 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.Square.CELL_MASK;
+
+/**
+ * A bounded cache of the effects of moves (see MoveDelta), keyed by the
+ * Zobrist key of the position moved from, the player, and the square
+ * played on.  A Board given a CascadeCache (see Board.setCascadeCache)
+ * looks up each move before making it, and on a hit replays the cached
+ * changes instead of resolving the cascade again.
+ * <p>
+ * The cache is set-associative: each key maps to a bucket of WAYS
+ * entries, and when a bucket is full, an entry is evicted by the clock
+ * (second-chance) algorithm within the bucket.  Only moves that cause at
+ * least one jump and change at most the given number of squares are
+ * stored, which bounds the memory used.  As a guard against different
+ * positions with the same key, a hit also requires that the original
+ * contents of every square in the cached entry match the current
+ * position.
+ * <p>
+ * A CascadeCache is not thread-safe; give each Board that is used by a
+ * different thread its own.
+ *
+ * @author Bernie Miao
+ */
+final class CascadeCache {
+
+    /**
+     * A cache with room for about CAPACITY entries (rounded up to a power
+     * of two, and at least WAYS), each of at most MAXCHANGES changed
+     * squares.
+     */
+    CascadeCache(int capacity, int maxChanges) {
+        int size = Integer.highestOneBit(Math.max(WAYS, capacity) - 1) << 1;
+        _keys = new long[size];
+        _moves = new int[size];
+        _entries = new MoveDelta[size];
+        _referenced = new boolean[size];
+        _hands = new int[size / WAYS];
+        _maxChanges = maxChanges;
+    }
+
+    /**
+     * Return the cached effects of PLAYER adding a spot to square #N of
+     * the position with packed squares CELLS and Zobrist key KEY, or
+     * null if there are none.  Counts a hit or a miss.
+     */
+    MoveDelta lookup(long key, Side player, int n, byte[] cells) {
+        int move = move(player, n);
+        int first = bucket(key, move) * WAYS;
+        for (int i = first; i < first + WAYS; i += 1) {
+            MoveDelta entry = _entries[i];
+            if (entry != null && _keys[i] == key && _moves[i] == move
+                && matches(entry, cells)) {
+                _referenced[i] = true;
+                _hits += 1;
+                return entry;
+            }
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /**
+     * Cache a copy of DELTA, the effects of a move made on the position
+     * with Zobrist key KEY, if it is worth caching.
+     */
+    void store(long key, MoveDelta delta) {
+        if (delta.explosions() == 0 || delta.size() > _maxChanges) {
+            return;
+        }
+        int move = move(delta.player(), delta.move());
+        int b = bucket(key, move), first = b * WAYS;
+        int slot = -1;
+        for (int i = first; i < first + WAYS && slot < 0; i += 1) {
+            if (_entries[i] == null
+                || (_keys[i] == key && _moves[i] == move)) {
+                slot = i;
+            }
+        }
+        while (slot < 0) {
+            int i = first + _hands[b];
+            _hands[b] = (_hands[b] + 1) % WAYS;
+            if (_referenced[i]) {
+                _referenced[i] = false;
+            } else {
+                slot = i;
+                _evictions += 1;
+            }
+        }
+        if (_entries[slot] == null) {
+            _entries[slot] = new MoveDelta();
+            _size += 1;
+        }
+        _entries[slot].copy(delta);
+        _keys[slot] = key;
+        _moves[slot] = move;
+        _referenced[slot] = false;
+    }
+
+    /**
+     * Return the number of lookups that found an entry.
+     */
+    long hits() {
+        return _hits;
+    }
+
+    /**
+     * Return the number of lookups that found no entry.
+     */
+    long misses() {
+        return _misses;
+    }
+
+    /**
+     * Return the number of entries evicted to make room for others.
+     */
+    long evictions() {
+        return _evictions;
+    }
+
+    /**
+     * Return the number of entries cached.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Remove all entries and reset the counts.
+     */
+    void clear() {
+        Arrays.fill(_entries, null);
+        Arrays.fill(_referenced, false);
+        _size = 0;
+        _hits = _misses = _evictions = 0;
+    }
+
+    /**
+     * Return true iff the original contents of every square changed by
+     * ENTRY are those in CELLS.
+     */
+    private static boolean matches(MoveDelta entry, byte[] cells) {
+        for (int i = 0; i < entry.size(); i += 1) {
+            if ((cells[entry.square(i)] & CELL_MASK) != entry.oldCell(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the encoding of PLAYER adding a spot to square #N.
+     */
+    private static int move(Side player, int n) {
+        return (n << 2) | player.ordinal();
+    }
+
+    /**
+     * Return the number of the bucket for KEY and the encoded move
+     * MOVE.
+     */
+    private int bucket(long key, int move) {
+        long h = (key ^ move) * 0x9e3779b97f4a7c15L;
+        return (int) (h >>> 32) & (_hands.length - 1);
+    }
+
+    /**
+     * The number of entries in each bucket.
+     */
+    static final int WAYS = 4;
+
+    /**
+     * The Zobrist keys of the positions of the entries.
+     */
+    private final long[] _keys;
+
+    /**
+     * The encoded moves of the entries (see move).
+     */
+    private final int[] _moves;
+
+    /**
+     * The entries, null where empty.
+     */
+    private final MoveDelta[] _entries;
+
+    /**
+     * True for the entries used since the clock hand of their bucket
+     * last passed them.
+     */
+    private final boolean[] _referenced;
+
+    /**
+     * The clock hand of each bucket: the next entry in it considered for
+     * eviction.
+     */
+    private final int[] _hands;
+
+    /**
+     * The largest number of changed squares in a cached entry.
+     */
+    private final int _maxChanges;
+
+    /**
+     * The number of entries.
+     */
+    private int _size;
+
+    /**
+     * Counts of lookups and evictions.
+     */
+    private long _hits, _misses, _evictions;
+}
@@ -0,0 +1,128 @@
+package jump61;
+
+import static jump61.Square.SIDE_BITS;
+
+/**
+ * A cascade engine specialized for one small board size.  Board.jump,
+ * written for boards of any size, finds the neighbors of a square
+ * through its Geometry and updates all of its counts, sets, and keys on
+ * every change.  A kernel instead knows its board size as a constant,
+ * so that row and column arithmetic and edge tests compile to constant
+ * operations and its bit sets fit in one or two longs, and it only
+ * records the original contents of each square it changes, leaving the
+ * Board to account for the net changes afterward.
+ * <p>
+ * The kernels for sizes 2 through MAX_SIZE are in CascadeKernels.java,
+ * which is generated from a template by KernelGenerator.  Do not edit
+ * it by hand; change KernelGenerator and regenerate it with
+ * 'make kernels'.
+ *
+ * @author Bernie Miao
+ */
+abstract class CascadeKernel {
+
+    /**
+     * Largest board size with a specialized kernel.
+     */
+    static final int MAX_SIZE = 10;
+
+    /**
+     * Return a new kernel for N x N boards, or null if there is none.
+     */
+    static CascadeKernel of(int N) {
+        return N <= MAX_SIZE ? CascadeKernels.of(N) : null;
+    }
+
+    /**
+     * A kernel for N x N boards.
+     */
+    CascadeKernel(int N) {
+        _size = N;
+        _changes = new int[N * N];
+    }
+
+    /**
+     * Return the number of rows and of columns of my boards.
+     */
+    final int size() {
+        return _size;
+    }
+
+    /**
+     * Do all jumping on the packed squares CELLS (see Square.pack) for
+     * the side with ordinal PLAYER, which owns OWNED squares, given that
+     * square #S, owned by PLAYER, is the only square that might be
+     * overfull.  Squares jump in exactly the same order as in
+     * Board.jump, and jumping stops when PLAYER owns every square.
+     * CELLS is changed in place, and each square changed is recorded
+     * once, with its original contents (see change).  Returns the
+     * number of squares changed.
+     */
+    abstract int jump(byte[] cells, int s, int player, int owned);
+
+    /**
+     * Return the Ith square changed by the last jump, packed as
+     * (square number << 8) | original contents.
+     */
+    final int change(int i) {
+        return _changes[i];
+    }
+
+    /**
+     * Return the number of jumps made by the last jump.
+     */
+    final int explosions() {
+        return _explosions;
+    }
+
+    /**
+     * Return the number of generations of jumps made by the last jump
+     * (see MoveDelta).
+     */
+    final int depth() {
+        return _depth;
+    }
+
+    /**
+     * Return the capacities of the squares of an N x N board.
+     */
+    static byte[] capacities(int N) {
+        byte[] result = new byte[N * N];
+        for (int r = 0; r < N; r += 1) {
+            for (int c = 0; c < N; c += 1) {
+                result[r * N + c] =
+                    (byte) ((r > 0 ? 1 : 0) + (r < N - 1 ? 1 : 0)
+                            + (c > 0 ? 1 : 0) + (c < N - 1 ? 1 : 0));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the packed square holding SPOTS spots of the side with
+     * ordinal PLAYER.
+     */
+    static int pack(int player, int spots) {
+        return (spots << SIDE_BITS) | player;
+    }
+
+    /**
+     * The number of rows and of columns.
+     */
+    private final int _size;
+
+    /**
+     * The changes made by the last jump.
+     */
+    protected final int[] _changes;
+
+    /**
+     * Number of entries in _changes.
+     */
+    protected int _numChanges;
+
+    /**
+     * The results of the last jump.
+     */
+    protected int _explosions, _depth;
+}
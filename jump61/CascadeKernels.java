@@ -0,0 +1,1164 @@
+// Generated by KernelGenerator.  DO NOT EDIT.
+package jump61;
+
+import static jump61.Square.CELL_MASK;
+import static jump61.Square.SIDE_BITS;
+import static jump61.Square.SIDE_MASK;
+
+/**
+ * Cascade kernels for board sizes 2 through 10, generated by
+ * KernelGenerator.  See CascadeKernel.
+ *
+ * @author Bernie Miao
+ */
+final class CascadeKernels {
+
+    /**
+     * Not instantiable.
+     */
+    private CascadeKernels() {
+    }
+
+    /**
+     * Return a new kernel for N x N boards, or null if there is none.
+     */
+    static CascadeKernel of(int N) {
+        switch (N) {
+        case 2:
+            return new Size2();
+        case 3:
+            return new Size3();
+        case 4:
+            return new Size4();
+        case 5:
+            return new Size5();
+        case 6:
+            return new Size6();
+        case 7:
+            return new Size7();
+        case 8:
+            return new Size8();
+        case 9:
+            return new Size9();
+        case 10:
+            return new Size10();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * The cascade kernel for 2 x 2 boards.
+     */
+    private static final class Size2 extends CascadeKernel {
+
+        /**
+         * A kernel for 2 x 2 boards.
+         */
+        Size2() {
+            super(2);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued = _logged = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 4) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 3;
+                _length -= 1;
+                remaining -= 1;
+                _queued &= ~(1L << p);
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 2, c = p - r * 2;
+                if (r < 1) {
+                    add(p + 2);
+                }
+                if (r > 0) {
+                    add(p - 2);
+                }
+                if (c < 1) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = (_queued & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if ((_logged & (1L << m)) == 0) {
+                _logged |= (1L << m);
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            _queued |= (1L << m);
+            _queue[(_head + _length) & 3] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(2);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[4];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded.
+         */
+        private long _queued, _logged;
+    }
+
+    /**
+     * The cascade kernel for 3 x 3 boards.
+     */
+    private static final class Size3 extends CascadeKernel {
+
+        /**
+         * A kernel for 3 x 3 boards.
+         */
+        Size3() {
+            super(3);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued = _logged = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 9) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 15;
+                _length -= 1;
+                remaining -= 1;
+                _queued &= ~(1L << p);
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 3, c = p - r * 3;
+                if (r < 2) {
+                    add(p + 3);
+                }
+                if (r > 0) {
+                    add(p - 3);
+                }
+                if (c < 2) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = (_queued & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if ((_logged & (1L << m)) == 0) {
+                _logged |= (1L << m);
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            _queued |= (1L << m);
+            _queue[(_head + _length) & 15] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(3);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[16];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded.
+         */
+        private long _queued, _logged;
+    }
+
+    /**
+     * The cascade kernel for 4 x 4 boards.
+     */
+    private static final class Size4 extends CascadeKernel {
+
+        /**
+         * A kernel for 4 x 4 boards.
+         */
+        Size4() {
+            super(4);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued = _logged = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 16) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 15;
+                _length -= 1;
+                remaining -= 1;
+                _queued &= ~(1L << p);
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 4, c = p - r * 4;
+                if (r < 3) {
+                    add(p + 4);
+                }
+                if (r > 0) {
+                    add(p - 4);
+                }
+                if (c < 3) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = (_queued & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if ((_logged & (1L << m)) == 0) {
+                _logged |= (1L << m);
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            _queued |= (1L << m);
+            _queue[(_head + _length) & 15] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(4);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[16];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded.
+         */
+        private long _queued, _logged;
+    }
+
+    /**
+     * The cascade kernel for 5 x 5 boards.
+     */
+    private static final class Size5 extends CascadeKernel {
+
+        /**
+         * A kernel for 5 x 5 boards.
+         */
+        Size5() {
+            super(5);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued = _logged = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 25) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 31;
+                _length -= 1;
+                remaining -= 1;
+                _queued &= ~(1L << p);
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 5, c = p - r * 5;
+                if (r < 4) {
+                    add(p + 5);
+                }
+                if (r > 0) {
+                    add(p - 5);
+                }
+                if (c < 4) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = (_queued & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if ((_logged & (1L << m)) == 0) {
+                _logged |= (1L << m);
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            _queued |= (1L << m);
+            _queue[(_head + _length) & 31] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(5);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[32];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded.
+         */
+        private long _queued, _logged;
+    }
+
+    /**
+     * The cascade kernel for 6 x 6 boards.
+     */
+    private static final class Size6 extends CascadeKernel {
+
+        /**
+         * A kernel for 6 x 6 boards.
+         */
+        Size6() {
+            super(6);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued = _logged = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 36) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 63;
+                _length -= 1;
+                remaining -= 1;
+                _queued &= ~(1L << p);
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 6, c = p - r * 6;
+                if (r < 5) {
+                    add(p + 6);
+                }
+                if (r > 0) {
+                    add(p - 6);
+                }
+                if (c < 5) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = (_queued & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if ((_logged & (1L << m)) == 0) {
+                _logged |= (1L << m);
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            _queued |= (1L << m);
+            _queue[(_head + _length) & 63] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(6);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[64];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded.
+         */
+        private long _queued, _logged;
+    }
+
+    /**
+     * The cascade kernel for 7 x 7 boards.
+     */
+    private static final class Size7 extends CascadeKernel {
+
+        /**
+         * A kernel for 7 x 7 boards.
+         */
+        Size7() {
+            super(7);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued = _logged = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 49) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 63;
+                _length -= 1;
+                remaining -= 1;
+                _queued &= ~(1L << p);
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 7, c = p - r * 7;
+                if (r < 6) {
+                    add(p + 7);
+                }
+                if (r > 0) {
+                    add(p - 7);
+                }
+                if (c < 6) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = (_queued & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if ((_logged & (1L << m)) == 0) {
+                _logged |= (1L << m);
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            _queued |= (1L << m);
+            _queue[(_head + _length) & 63] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(7);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[64];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded.
+         */
+        private long _queued, _logged;
+    }
+
+    /**
+     * The cascade kernel for 8 x 8 boards.
+     */
+    private static final class Size8 extends CascadeKernel {
+
+        /**
+         * A kernel for 8 x 8 boards.
+         */
+        Size8() {
+            super(8);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued = _logged = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 64) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 63;
+                _length -= 1;
+                remaining -= 1;
+                _queued &= ~(1L << p);
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 8, c = p - r * 8;
+                if (r < 7) {
+                    add(p + 8);
+                }
+                if (r > 0) {
+                    add(p - 8);
+                }
+                if (c < 7) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = (_queued & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if ((_logged & (1L << m)) == 0) {
+                _logged |= (1L << m);
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            _queued |= (1L << m);
+            _queue[(_head + _length) & 63] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(8);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[64];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded.
+         */
+        private long _queued, _logged;
+    }
+
+    /**
+     * The cascade kernel for 9 x 9 boards.
+     */
+    private static final class Size9 extends CascadeKernel {
+
+        /**
+         * A kernel for 9 x 9 boards.
+         */
+        Size9() {
+            super(9);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued0 = _queued1 = _logged0 = _logged1 = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 81) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 127;
+                _length -= 1;
+                remaining -= 1;
+                if (p < 64) {
+                    _queued0 &= ~(1L << p);
+                } else {
+                    _queued1 &= ~(1L << p);
+                }
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 9, c = p - r * 9;
+                if (r < 8) {
+                    add(p + 9);
+                }
+                if (r > 0) {
+                    add(p - 9);
+                }
+                if (c < 8) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = ((m < 64 ? _queued0 : _queued1) & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if (((m < 64 ? _logged0 : _logged1) & (1L << m)) == 0) {
+                if (m < 64) {
+                    _logged0 |= (1L << m);
+                } else {
+                    _logged1 |= (1L << m);
+                }
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            if (m < 64) {
+                _queued0 |= (1L << m);
+            } else {
+                _queued1 |= (1L << m);
+            }
+            _queue[(_head + _length) & 127] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(9);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[128];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded, for squares 0-63 and 64
+         * on.
+         */
+        private long _queued0, _queued1, _logged0, _logged1;
+    }
+
+    /**
+     * The cascade kernel for 10 x 10 boards.
+     */
+    private static final class Size10 extends CascadeKernel {
+
+        /**
+         * A kernel for 10 x 10 boards.
+         */
+        Size10() {
+            super(10);
+        }
+
+        @Override
+        int jump(byte[] cells, int s, int player, int owned) {
+            _numChanges = _explosions = _depth = 0;
+            if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {
+                return 0;
+            }
+            _cells = cells;
+            _player = player;
+            _owned = owned;
+            _queued0 = _queued1 = _logged0 = _logged1 = 0;
+            _head = _length = 0;
+            enqueue(s);
+            int remaining = 0;
+            while (_length > 0 && _owned < 100) {
+                if (remaining == 0) {
+                    remaining = _length;
+                    _depth += 1;
+                }
+                int p = _queue[_head];
+                _head = (_head + 1) & 127;
+                _length -= 1;
+                remaining -= 1;
+                if (p < 64) {
+                    _queued0 &= ~(1L << p);
+                } else {
+                    _queued1 &= ~(1L << p);
+                }
+                int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;
+                int capacity = CAPACITY[p];
+                if (spots <= capacity) {
+                    continue;
+                }
+                _explosions += 1;
+                int r = p / 10, c = p - r * 10;
+                if (r < 9) {
+                    add(p + 10);
+                }
+                if (r > 0) {
+                    add(p - 10);
+                }
+                if (c < 9) {
+                    add(p + 1);
+                }
+                if (c > 0) {
+                    add(p - 1);
+                }
+                touch(p);
+                cells[p] = (byte) pack(player, spots - capacity);
+            }
+            _cells = null;
+            return _numChanges;
+        }
+
+        /**
+         * Add a spot of _player to square #M, queuing M if it becomes overfull.
+         */
+        private void add(int m) {
+            touch(m);
+            int old = _cells[m] & CELL_MASK;
+            if ((old & SIDE_MASK) != _player) {
+                _owned += 1;
+            }
+            int spots = (old >>> SIDE_BITS) + 1;
+            _cells[m] = (byte) pack(_player, spots);
+            boolean queued = ((m < 64 ? _queued0 : _queued1) & (1L << m)) != 0;
+            if (spots > CAPACITY[m] && !queued) {
+                enqueue(m);
+            }
+        }
+
+        /**
+         * Record the original contents of square #M, unless already recorded.
+         */
+        private void touch(int m) {
+            if (((m < 64 ? _logged0 : _logged1) & (1L << m)) == 0) {
+                if (m < 64) {
+                    _logged0 |= (1L << m);
+                } else {
+                    _logged1 |= (1L << m);
+                }
+                _changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);
+                _numChanges += 1;
+            }
+        }
+
+        /**
+         * Add square #M to the end of the queue.
+         */
+        private void enqueue(int m) {
+            if (m < 64) {
+                _queued0 |= (1L << m);
+            } else {
+                _queued1 |= (1L << m);
+            }
+            _queue[(_head + _length) & 127] = m;
+            _length += 1;
+        }
+
+        /**
+         * The capacities of the squares.
+         */
+        private static final byte[] CAPACITY = capacities(10);
+        /**
+         * Ring buffer of squares to jump.
+         */
+        private final int[] _queue = new int[128];
+        /**
+         * The squares being changed.
+         */
+        private byte[] _cells;
+        /**
+         * The ordinal of the player, the number of squares it owns, and the
+         * start and length of the queue.
+         */
+        private int _player, _owned, _head, _length;
+        /**
+         * Bit sets of the squares queued and recorded, for squares 0-63 and 64
+         * on.
+         */
+        private long _queued0, _queued1, _logged0, _logged1;
+    }
+}
@@ -0,0 +1,189 @@
+package jump61;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+import static jump61.Square.CELL_MASK;
+import static jump61.Square.SIDE_BITS;
+import static jump61.Square.SIDE_MASK;
+import static jump61.Square.sideOrdinalOf;
+import static jump61.Square.spotsOf;
+
+/**
+ * Scans of arrays of packed squares (see Square.pack) that examine
+ * eight squares at a time.  Each group of eight bytes is read as one
+ * long, and the side or spot fields of all eight squares are compared
+ * at once with SIMD-within-a-register arithmetic: a byte of the
+ * difference from the wanted value is zero iff that square matches, and
+ * the zero bytes are found and gathered into eight bits of the result
+ * with a few masks, an add, and a multiply.  Squares left over at the
+ * end of a range are examined one at a time.
+ * <p>
+ * The methods whose names end in "Scalar" compute the same results one
+ * square at a time, for testing and for comparison (see
+ * ScanBenchmark).
+ *
+ * @author Bernie Miao
+ */
+final class CellScan {
+
+    /**
+     * Not instantiable.
+     */
+    private CellScan() {
+    }
+
+    /**
+     * Return the set of squares #FROM .. #TO-1 in CELLS whose side has
+     * ordinal SIDE, as a bit set in which square #N is bit N - FROM.
+     * Assumes TO - FROM <= 64.
+     */
+    static long sideMask(byte[] cells, int from, int to, int side) {
+        return match(cells, from, to, SIDE_MASK, 0, side);
+    }
+
+    /**
+     * Return the set of squares #FROM .. #TO-1 in CELLS that hold
+     * exactly SPOTS spots, as for sideMask.
+     */
+    static long spotsMask(byte[] cells, int from, int to, int spots) {
+        return match(cells, from, to, CELL_MASK >>> SIDE_BITS, SIDE_BITS,
+                     spots);
+    }
+
+    /**
+     * Return the number of squares #FROM .. #TO-1 in CELLS whose side
+     * has ordinal SIDE.
+     */
+    static int count(byte[] cells, int from, int to, int side) {
+        int result = 0;
+        for (int k = from; k < to; k += Long.SIZE) {
+            result += Long.bitCount(sideMask(cells, k,
+                                             Math.min(to, k + Long.SIZE),
+                                             side));
+        }
+        return result;
+    }
+
+    /**
+     * Return the total number of spots in squares #FROM .. #TO-1 of
+     * CELLS.
+     */
+    static int spots(byte[] cells, int from, int to) {
+        int result = 0;
+        int k;
+        for (k = from; k + GROUP <= to; k += GROUP) {
+            long spots = ((long) WORDS.get(cells, k) >>> SIDE_BITS)
+                & (LOW_BYTES * (CELL_MASK >>> SIDE_BITS));
+            long pairs = (spots & LOW_BYTES_OF_SHORTS)
+                + ((spots >>> Byte.SIZE) & LOW_BYTES_OF_SHORTS);
+            result += (int) ((pairs * LOW_SHORTS) >>> (Long.SIZE
+                                                       - Short.SIZE));
+        }
+        for (; k < to; k += 1) {
+            result += spotsOf(cells[k]);
+        }
+        return result;
+    }
+
+    /**
+     * As for sideMask, one square at a time.
+     */
+    static long sideMaskScalar(byte[] cells, int from, int to, int side) {
+        long result = 0;
+        for (int k = from; k < to; k += 1) {
+            if (sideOrdinalOf(cells[k]) == side) {
+                result |= 1L << (k - from);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * As for spotsMask, one square at a time.
+     */
+    static long spotsMaskScalar(byte[] cells, int from, int to, int spots) {
+        long result = 0;
+        for (int k = from; k < to; k += 1) {
+            if (spotsOf(cells[k]) == spots) {
+                result |= 1L << (k - from);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * As for spots, one square at a time.
+     */
+    static int spotsScalar(byte[] cells, int from, int to) {
+        int result = 0;
+        for (int k = from; k < to; k += 1) {
+            result += spotsOf(cells[k]);
+        }
+        return result;
+    }
+
+    /**
+     * Return the set of squares #FROM .. #TO-1 in CELLS for which the
+     * field (CELL >>> SHIFT) & MASK equals VALUE, as for sideMask.
+     */
+    private static long match(byte[] cells, int from, int to, int mask,
+                              int shift, int value) {
+        long lanes = LOW_BYTES * mask, wanted = LOW_BYTES * value;
+        long result = 0;
+        int k;
+        for (k = from; k + GROUP <= to; k += GROUP) {
+            long word = (long) WORDS.get(cells, k);
+            long diff = ((word >>> shift) & lanes) ^ wanted;
+            long zero = ~(((diff & LOW_SEVEN_BITS) + LOW_SEVEN_BITS)
+                          | diff | LOW_SEVEN_BITS);
+            result |= (((zero >>> (Byte.SIZE - 1)) * GATHER)
+                       >>> (Long.SIZE - GROUP)) << (k - from);
+        }
+        for (; k < to; k += 1) {
+            if (((cells[k] >>> shift) & mask) == value) {
+                result |= 1L << (k - from);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The number of squares examined at once.
+     */
+    private static final int GROUP = Long.BYTES;
+
+    /**
+     * 1 in each byte.
+     */
+    private static final long LOW_BYTES = 0x0101010101010101L;
+
+    /**
+     * 0x7f in each byte.
+     */
+    private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * 0xff in the low byte of each 16-bit lane.
+     */
+    private static final long LOW_BYTES_OF_SHORTS = 0x00ff00ff00ff00ffL;
+
+    /**
+     * 1 in each 16-bit lane.
+     */
+    private static final long LOW_SHORTS = 0x0001000100010001L;
+
+    /**
+     * Multiplier that gathers bit 0 of each byte into the top byte.
+     */
+    private static final long GATHER = 0x0102040810204080L;
+
+    /**
+     * Reads eight bytes of a byte array as a little-endian long, so that
+     * byte I of the group is bits 8I .. 8I+7.
+     */
+    private static final VarHandle WORDS =
+        MethodHandles.byteArrayViewVarHandle(long[].class,
+                                             ByteOrder.LITTLE_ENDIAN);
+}
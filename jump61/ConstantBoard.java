@@ -34,8 +34,13 @@ class ConstantBoard extends Board {
     }
 
     @Override
-    Square[][] getBoard() {
-        return _board.getBoard();
+    Geometry geometry() {
+        return _board.geometry();
+    }
+
+    @Override
+    byte[] getCells() {
+        return _board.getCells();
     }
 
     @Override
@@ -43,6 +48,36 @@ class ConstantBoard extends Board {
         return _board.numPieces();
     }
 
+    @Override
+    long[] playable(Side side) {
+        return _board.playable(side);
+    }
+
+    @Override
+    long[] critical(Side side) {
+        return _board.critical(side);
+    }
+
+    @Override
+    int numCritical(Side side) {
+        return _board.numCritical(side);
+    }
+
+    @Override
+    int numCritical(Side side, int capacity) {
+        return _board.numCritical(side, capacity);
+    }
+
+    @Override
+    long zobristKey() {
+        return _board.zobristKey();
+    }
+
+    @Override
+    long symmetricKey(int t) {
+        return _board.symmetricKey(t);
+    }
+
     @Override
     Side whoseMove() {
         return _board.whoseMove();
@@ -83,6 +118,10 @@ class ConstantBoard extends Board {
     void copy(Board board) {
     }
 
+    @Override
+    void setContents(int N, byte[] cells) {
+    }
+
     @Override
     void addSpot(Side player, int r, int c) {
     }
@@ -91,6 +130,11 @@ class ConstantBoard extends Board {
     void addSpot(Side player, int n) {
     }
 
+    @Override
+    MoveDelta addSpot(Side player, int n, MoveDelta delta) {
+        return delta;
+    }
+
     @Override
     void set(int r, int c, int num, Side player) {
     }
@@ -13,6 +13,21 @@ class Defaults {
     static final int BOARD_SIZE = 6;
 
     /** Maximum number of squares on the side of a game board. */
-    static final int MAX_BOARD_SIZE = 10;
+    static final int MAX_BOARD_SIZE = 1024;
+
+    /** Default time allowed the AI for each move, in milliseconds. */
+    static final int TIME_BUDGET = 1000;
+
+    /** Default number of threads with which the AI searches. */
+    static final int THREADS = 1;
+
+    /** Largest number of threads with which the AI may search. */
+    static final int MAX_THREADS = 256;
+
+    /** Default size of the AI's transposition table, in megabytes. */
+    static final int TABLE_SIZE = 16;
+
+    /** Largest size of the AI's transposition table, in megabytes. */
+    static final int MAX_TABLE_SIZE = 1024;
 
 }
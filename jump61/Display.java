@@ -125,6 +125,13 @@ class Display extends TopLevel implements View, CommandSource, Reporter {
         _boardWidget.repaint();
     }
 
+    @Override
+    public void update(Board board, MoveDelta delta) {
+        if (!_boardWidget.update(board, delta)) {
+            update(board);
+        }
+    }
+
     @Override
     public String getCommand(String ignored) {
         try {
@@ -15,9 +15,10 @@ class Game {
 
     /** A list of all commands. */
     private static final String[] COMMAND_NAMES = {
-        "auto", "board", "clear", "dump", "help", "manual",
-        "new", "q", "quiet", "quit",
-        "seed", "set", "size", "start", "verbose",
+        "auto", "board", "clear", "dump", "help", "load", "manual",
+        "new", "position", "q", "quiet", "quit",
+        "seed", "set", "size", "start", "table", "threads", "time",
+        "verbose",
     };
 
     /** A new Game that takes command/move input from INP, logs
@@ -43,6 +44,47 @@ class Game {
         return _readonlyBoard;
     }
 
+    /** Returns the transposition table shared by the AI players,
+     *  creating it on first use, so that games without AI players need
+     *  no table. */
+    TranspositionTable transpositionTable() {
+        if (_table == null) {
+            _table = new TranspositionTable(_tableSize);
+        }
+        return _table;
+    }
+
+    /** Returns the time, in milliseconds, that an AI player may spend
+     *  choosing a move. */
+    int timeBudget() {
+        return _timeBudget;
+    }
+
+    /** Allow AI players MILLIS milliseconds, which must be positive, to
+     *  choose each move. */
+    void setTimeBudget(int millis) {
+        if (millis <= 0) {
+            throw error("time must be positive");
+        }
+        _timeBudget = millis;
+    }
+
+    /** Returns the number of threads with which an AI player searches
+     *  for moves. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Have AI players search with N threads, where 1 <= N <=
+     *  Defaults.MAX_THREADS. */
+    void setThreads(int n) {
+        if (n < 1 || n > Defaults.MAX_THREADS) {
+            throw error("threads must be between 1 and %d",
+                        Defaults.MAX_THREADS);
+        }
+        _threads = n;
+    }
+
     /** Return true iff the current game is not over. */
     boolean gameInProgress() {
         return _board.getWinner() == null;
@@ -62,7 +104,10 @@ class Game {
         winnerAnnounced = false;
         while (_exit < 0) {
             String cmnd;
-            _view.update(_board);
+            if (!_viewCurrent) {
+                _view.update(_board);
+            }
+            _viewCurrent = false;
             if (_board.getWinner() == null) {
                 winnerAnnounced = false;
                 try {
@@ -103,7 +148,9 @@ class Game {
     /** Add a spot to R C, if legal to do so. */
     void makeMove(int r, int c) {
         assert _board.isLegal(_board.whoseMove(), r, c);
-        _board.addSpot(_board.whoseMove(), r, c);
+        _board.addSpot(_board.whoseMove(), r, c, _delta);
+        _view.update(_board, _delta);
+        _viewCurrent = true;
         if (_verbose) {
             printBoard();
         }
@@ -112,7 +159,9 @@ class Game {
     /** Add a spot to square #N, if legal to do so. */
     void makeMove(int n) {
         assert _board.isLegal(_board.whoseMove(), n);
-        _board.addSpot(_board.whoseMove(), n);
+        _board.addSpot(_board.whoseMove(), n, _delta);
+        _view.update(_board, _delta);
+        _viewCurrent = true;
         if (_verbose) {
             printBoard();
         }
@@ -175,12 +224,28 @@ class Game {
 
     /** Print the current board using standard board-dump format. */
     private void dump() {
-        _reporter.msg(_board.toString());
+        _rendition.setLength(0);
+        _board.dump(_rendition);
+        _reporter.text(_rendition);
+    }
+
+    /** Print the current position in compact notation (see
+     *  PositionCodec). */
+    private void printPosition() {
+        _reporter.msg(_codec.toText(_board));
+    }
+
+    /** Set the board to the position given by NOTATION (see
+     *  PositionCodec), clearing its history. */
+    private void loadPosition(String notation) {
+        _codec.fromText(notation, _board);
     }
 
     /** Print a board with row/column numbers. */
     private void printBoard() {
-        _reporter.msg(_board.toDisplayString());
+        _rendition.setLength(0);
+        _board.display(_rendition);
+        _reporter.text(_rendition);
     }
 
     /** Print a help message. */
@@ -188,6 +253,19 @@ class Game {
         printHelpResource(HELP, System.out);
     }
 
+    /** Replace the AI players' transposition table with one of
+     *  MEGABYTES megabytes, which must be between 1 and
+     *  Defaults.MAX_TABLE_SIZE.  The new table is created when next
+     *  needed (see transpositionTable). */
+    void setTableSize(int megabytes) {
+        if (megabytes < 1 || megabytes > Defaults.MAX_TABLE_SIZE) {
+            throw error("table size must be between 1 and %d megabytes",
+                        Defaults.MAX_TABLE_SIZE);
+        }
+        _tableSize = megabytes;
+        _table = null;
+    }
+
     /** Seed the random-number generator with SEED. */
     private void setSeed(long seed) {
         _seed = seed;
@@ -208,11 +286,13 @@ class Game {
     }
 
     /** Stop any current game and set the board to an empty N x N board
-     *  with numMoves() == 0.  Requires 2 <= N <= 10. */
+     *  with numMoves() == 0.  Requires
+     *  2 <= N <= Defaults.MAX_BOARD_SIZE. */
     private void setSize(int n) {
         log("size %d", n);
-        if (n < 2 || n > 10) {
-            throw error("size must be between 2 and 10");
+        if (n < 2 || n > Defaults.MAX_BOARD_SIZE) {
+            throw error("size must be between 2 and %d",
+                        Defaults.MAX_BOARD_SIZE);
         }
         _board.clear(n);
     }
@@ -269,12 +349,18 @@ class Game {
             case "help":
                 help();
                 break;
+            case "load":
+                loadPosition(parts[1]);
+                break;
             case "manual":
                 setManual(toSide(parts[1]));
                 break;
             case "new":
                 clear();
                 break;
+            case "position":
+                printPosition();
+                break;
             case "quiet":
                 _verbose = false;
                 break;
@@ -291,6 +377,15 @@ class Game {
             case "size":
                 setSize(toInt(parts[1]));
                 break;
+            case "table":
+                setTableSize(toInt(parts[1]));
+                break;
+            case "threads":
+                setThreads(toInt(parts[1]));
+                break;
+            case "time":
+                setTimeBudget(toInt(parts[1]));
+                break;
             case "verbose":
                 _verbose = true;
                 break;
@@ -331,12 +426,19 @@ class Game {
     /** Outlet for responses to the user. */
     private final Reporter _reporter;
 
+    /** Buffer reused to render boards for dump and printBoard. */
+    private final StringBuilder _rendition = new StringBuilder();
+
     /** The board on which I record all moves. */
     private final Board _board;
     /** A readonly view of _board. */
     private final Board _readonlyBoard;
     /** Displayer of boards. */
     private View _view;
+    /** The effects of the last move, reused from move to move. */
+    private final MoveDelta _delta = new MoveDelta();
+    /** True iff _view has been updated since the last command. */
+    private boolean _viewCurrent;
     /** True iff we are logging commands. */
     private boolean _logging;
 
@@ -352,6 +454,22 @@ class Game {
      *  indicates that the session is not over. */
     private int _exit;
 
+    /** Time allowed AI players for each move, in milliseconds. */
+    private int _timeBudget = Defaults.TIME_BUDGET;
+
+    /** Number of threads with which AI players search. */
+    private int _threads = Defaults.THREADS;
+
+    /** Size of the AI players' transposition table, in megabytes. */
+    private int _tableSize = Defaults.TABLE_SIZE;
+
+    /** Transposition table shared by the AI players, or null if it has
+     *  not been needed since its size was last set. */
+    private TranspositionTable _table;
+
+    /** Encoder and decoder for position notation. */
+    private final PositionCodec _codec = new PositionCodec();
+
     /** Current players, indexed by color (RED, BLUE). */
     private final Player[] _players = new Player[Side.values().length];
 
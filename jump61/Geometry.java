@@ -0,0 +1,263 @@
+package jump61;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fixed neighbor structure of an N x N Jump61 board: for each square
+ * number, the square numbers of its orthogonal neighbors and its capacity
+ * (its number of neighbors), and the images of each square under the
+ * SYMMETRIES rotations and reflections of the board, numbered as
+ * follows (with rows and columns numbered from 0):
+ * <pre>
+ *   0: identity             (r, c) -> (r, c)
+ *   1: rotate 90 degrees    (r, c) -> (c, N-1-r)
+ *   2: rotate 180 degrees   (r, c) -> (N-1-r, N-1-c)
+ *   3: rotate 270 degrees   (r, c) -> (N-1-c, r)
+ *   4: reflect left-right   (r, c) -> (r, N-1-c)
+ *   5: reflect top-bottom   (r, c) -> (N-1-r, c)
+ *   6: transpose            (r, c) -> (c, r)
+ *   7: anti-transpose       (r, c) -> (N-1-c, N-1-r)
+ * </pre>
+ * Geometries are immutable, so a single
+ * Geometry for each size is shared by all Boards of that size.
+ * <p>
+ * For boards up to TABLED_SIZE on a side, neighbors, symmetric images
+ * and Zobrist keys are looked up in tables.  The tables take several
+ * hundred bytes per square, so for larger boards they are omitted and
+ * the same values are computed as needed.
+ *
+ * @author Bernie Miao
+ */
+final class Geometry {
+
+    /**
+     * The maximum number of neighbors of any square.
+     */
+    static final int MAX_NEIGHBORS = 4;
+
+    /**
+     * The number of symmetries of a square board.
+     */
+    static final int SYMMETRIES = 8;
+
+    /**
+     * INVERSE[T] is the symmetry that undoes symmetry T.
+     */
+    private static final int[] INVERSE = { 0, 3, 2, 1, 4, 5, 6, 7 };
+
+    /**
+     * Packed squares below this value (those with fewer than 16 spots)
+     * have their Zobrist keys tabulated.
+     */
+    private static final int TABLED_CELLS = 16 << Square.SIDE_BITS;
+
+    /**
+     * The largest size whose Geometry has tables.
+     */
+    static final int TABLED_SIZE = 64;
+
+    /**
+     * The Geometry of an N x N board.
+     */
+    private Geometry(int N) {
+        _size = N;
+        _capacityMasks = new long[MAX_NEIGHBORS + 1][(N * N + 63) >>> 6];
+        for (int n = 0; n < N * N; n += 1) {
+            _capacityMasks[neighbors(n)][n >>> 6] |= 1L << n;
+        }
+        if (N > TABLED_SIZE) {
+            _adjacent = null;
+            _capacity = null;
+            _symmetric = null;
+            _zobrist = null;
+            return;
+        }
+        _adjacent = new int[N * N * MAX_NEIGHBORS];
+        _capacity = new byte[N * N];
+        _symmetric = new int[SYMMETRIES * N * N];
+        _zobrist = new long[N * N * TABLED_CELLS];
+        for (int n = 0; n < N * N; n += 1) {
+            int r = n / N, c = n % N;
+            int r1 = N - 1 - r, c1 = N - 1 - c;
+            int[] images = {
+                n, c * N + r1, r1 * N + c1, c1 * N + r,
+                r * N + c1, r1 * N + c, c * N + r, c1 * N + r1,
+            };
+            for (int t = 0; t < SYMMETRIES; t += 1) {
+                _symmetric[t * N * N + n] = images[t];
+            }
+            for (int cell = 0; cell < TABLED_CELLS; cell += 1) {
+                _zobrist[n * TABLED_CELLS + cell] = Zobrist.key(n, cell);
+            }
+            int k = n * MAX_NEIGHBORS;
+            if (r + 1 < N) {
+                _adjacent[k++] = n + N;
+            }
+            if (r > 0) {
+                _adjacent[k++] = n - N;
+            }
+            if (c + 1 < N) {
+                _adjacent[k++] = n + 1;
+            }
+            if (c > 0) {
+                _adjacent[k++] = n - 1;
+            }
+            _capacity[n] = (byte) (k - n * MAX_NEIGHBORS);
+        }
+    }
+
+    /**
+     * Return the (shared) Geometry of an N x N board.
+     */
+    static Geometry of(int N) {
+        return CACHE.computeIfAbsent(N, Geometry::new);
+    }
+
+    /**
+     * Return the number of rows and of columns of my board.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return true iff my values are looked up in tables (that is, iff
+     * size() <= TABLED_SIZE), in which case they are cheap to get.
+     */
+    boolean tabled() {
+        return _capacity != null;
+    }
+
+    /**
+     * Return the number of neighbors of square #N, which is also the
+     * largest number of spots it can hold without jumping.
+     */
+    int neighbors(int n) {
+        if (_capacity != null) {
+            return _capacity[n];
+        }
+        int N = _size, r = n / N, c = n - r * N;
+        return MAX_NEIGHBORS - (r == 0 ? 1 : 0) - (r == N - 1 ? 1 : 0)
+            - (c == 0 ? 1 : 0) - (c == N - 1 ? 1 : 0);
+    }
+
+    /**
+     * Return the set of squares #64W .. #64W+63 that have CAPACITY
+     * neighbors, as a bit set in which square #N is bit N % 64.
+     */
+    long capacityMask(int capacity, int w) {
+        return _capacityMasks[capacity][w];
+    }
+
+    /**
+     * Return the square number of the Kth neighbor of square #N,
+     * 0 <= K < neighbors(N).  Neighbors are listed in the order below,
+     * above, right, left.
+     */
+    int neighbor(int n, int k) {
+        if (_adjacent != null) {
+            return _adjacent[n * MAX_NEIGHBORS + k];
+        }
+        int N = _size, r = n / N, c = n - r * N;
+        if (r + 1 < N && k-- == 0) {
+            return n + N;
+        }
+        if (r > 0 && k-- == 0) {
+            return n - N;
+        }
+        if (c + 1 < N && k-- == 0) {
+            return n + 1;
+        }
+        return n - 1;
+    }
+
+    /**
+     * Return the square number of the image of square #N under
+     * symmetry #T.
+     */
+    int symmetric(int t, int n) {
+        int N = _size;
+        if (_symmetric != null) {
+            return _symmetric[t * N * N + n];
+        }
+        int r = n / N, c = n - r * N;
+        int r1 = N - 1 - r, c1 = N - 1 - c;
+        switch (t) {
+        case 0:
+            return n;
+        case 1:
+            return c * N + r1;
+        case 2:
+            return r1 * N + c1;
+        case 3:
+            return c1 * N + r;
+        case 4:
+            return r * N + c1;
+        case 5:
+            return r1 * N + c;
+        case 6:
+            return c * N + r;
+        default:
+            return c1 * N + r1;
+        }
+    }
+
+    /**
+     * Return Zobrist.key(N, CELL), using a table for the common case.
+     */
+    long zobrist(int n, int cell) {
+        if (cell < TABLED_CELLS && _zobrist != null) {
+            return _zobrist[n * TABLED_CELLS + cell];
+        }
+        return Zobrist.key(n, cell);
+    }
+
+    /**
+     * Return the number of the symmetry that undoes symmetry #T.
+     */
+    static int inverse(int t) {
+        return INVERSE[t];
+    }
+
+    /**
+     * Geometries already created, indexed by size.
+     */
+    private static final ConcurrentHashMap<Integer, Geometry> CACHE =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The number of rows and of columns.
+     */
+    private final int _size;
+
+    /**
+     * Neighbors of each square: the neighbors of square #N occupy
+     * _adjacent[N * MAX_NEIGHBORS] through
+     * _adjacent[N * MAX_NEIGHBORS + _capacity[N] - 1].
+     */
+    private final int[] _adjacent;
+
+    /**
+     * The number of neighbors of each square.  Null if !tabled(), as
+     * are the other tables.
+     */
+    private final byte[] _capacity;
+
+    /**
+     * The image of square #N under symmetry #T is
+     * _symmetric[T * N * N + N].
+     */
+    private final int[] _symmetric;
+
+    /**
+     * Zobrist.key(N, CELL) for each square #N and each packed square
+     * CELL < TABLED_CELLS is _zobrist[N * TABLED_CELLS + CELL].
+     */
+    private final long[] _zobrist;
+
+    /**
+     * Square #N has C neighbors iff bit N % 64 of _capacityMasks[C][N / 64]
+     * is 1.
+     */
+    private final long[][] _capacityMasks;
+}
@@ -0,0 +1,50 @@
+package jump61;
+
+import java.util.Random;
+
+/**
+ * Compares the speed of the cascade kernels specialized for each board
+ * size (see CascadeKernel) with that of Board's general cascade engine,
+ * by timing dense random play (see CascadeBenchmark) on Boards of each
+ * size that has a kernel, with and without it.
+ * Usage: java jump61.KernelBenchmark [SECONDS]
+ *
+ * @author Bernie Miao
+ */
+class KernelBenchmark {
+
+    /**
+     * Run the benchmark as described in the class comment, with
+     * command-line arguments ARGS.
+     */
+    public static void main(String... args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 1.0;
+        long budget = (long) (seconds * 1e9);
+
+        System.out.printf("%6s %14s %14s %8s%n", "size", "generic mv/s",
+                          "kernel mv/s", "speedup");
+        for (int N = 2; N <= CascadeKernel.MAX_SIZE; N += 1) {
+            double generic = movesPerSecond(N, false, budget);
+            double kernel = movesPerSecond(N, true, budget);
+            System.out.printf("%6d %14.3e %14.3e %8.2f%n", N, generic,
+                              kernel, kernel / generic);
+        }
+    }
+
+    /**
+     * Return the number of dense random moves per second made on an
+     * N x N Board, using its specialized kernel iff SPECIALIZED, timed
+     * for about BUDGET nanoseconds.
+     */
+    private static double movesPerSecond(int N, boolean specialized,
+                                         long budget) {
+        Board board = new Board(N);
+        board.setUndoLimit(0);
+        board.setSpecialized(specialized);
+        Random rand = new Random(N);
+        CascadeBenchmark.setDense(board, rand);
+        double time = CascadeBenchmark.time(
+            budget, () -> CascadeBenchmark.playDense(board, rand));
+        return CascadeBenchmark.RANDOM_MOVES / time;
+    }
+}
@@ -0,0 +1,274 @@
+package jump61;
+
+import java.io.PrintStream;
+
+/**
+ * Writes CascadeKernels.java, the cascade kernels (see CascadeKernel)
+ * for board sizes 2 through CascadeKernel.MAX_SIZE, on the standard
+ * output.  Each kernel is the same template instantiated with its board
+ * size as a constant: its ring buffer is the smallest power of two that
+ * holds every square, and its bit sets are one long for boards of up to
+ * 64 squares and two longs otherwise.
+ * Usage: java jump61.KernelGenerator > CascadeKernels.java
+ *
+ * @author Bernie Miao
+ */
+class KernelGenerator {
+
+    /**
+     * Write CascadeKernels.java on the standard output.  Ignores
+     * ARGS.
+     */
+    public static void main(String... args) {
+        new KernelGenerator(System.out).generate();
+    }
+
+    /**
+     * A generator writing on OUT.
+     */
+    KernelGenerator(PrintStream out) {
+        _out = out;
+    }
+
+    /**
+     * Write all the kernels.
+     */
+    void generate() {
+        line(0, "// Generated by KernelGenerator.  DO NOT EDIT.");
+        line(0, "package jump61;");
+        line(0, "");
+        line(0, "import static jump61.Square.CELL_MASK;");
+        line(0, "import static jump61.Square.SIDE_BITS;");
+        line(0, "import static jump61.Square.SIDE_MASK;");
+        line(0, "");
+        line(0, "/**");
+        line(0, " * Cascade kernels for board sizes 2 through %d, generated by",
+             CascadeKernel.MAX_SIZE);
+        line(0, " * KernelGenerator.  See CascadeKernel.");
+        line(0, " *");
+        line(0, " * @author Bernie Miao");
+        line(0, " */");
+        line(0, "final class CascadeKernels {");
+        line(0, "");
+        comment(1, "Not instantiable.");
+        line(1, "private CascadeKernels() {");
+        line(1, "}");
+        line(0, "");
+        comment(1, "Return a new kernel for N x N boards, or null if there "
+                + "is none.");
+        line(1, "static CascadeKernel of(int N) {");
+        line(2, "switch (N) {");
+        for (int N = 2; N <= CascadeKernel.MAX_SIZE; N += 1) {
+            line(2, "case %d:", N);
+            line(3, "return new Size%d();", N);
+        }
+        line(2, "default:");
+        line(3, "return null;");
+        line(2, "}");
+        line(1, "}");
+        for (int N = 2; N <= CascadeKernel.MAX_SIZE; N += 1) {
+            line(0, "");
+            kernel(N);
+        }
+        line(0, "}");
+    }
+
+    /**
+     * Write the kernel for N x N boards.
+     */
+    private void kernel(int N) {
+        int squares = N * N;
+        int ring = Integer.highestOneBit(squares - 1) << 1;
+        _wide = squares > Long.SIZE;
+
+        comment(1, String.format("The cascade kernel for %d x %d boards.",
+                                 N, N));
+        line(1, "private static final class Size%d extends CascadeKernel {",
+             N);
+        line(0, "");
+        comment(2, String.format("A kernel for %d x %d boards.", N, N));
+        line(2, "Size%d() {", N);
+        line(3, "super(%d);", N);
+        line(2, "}");
+        line(0, "");
+        line(2, "@Override");
+        line(2, "int jump(byte[] cells, int s, int player, int owned) {");
+        line(3, "_numChanges = _explosions = _depth = 0;");
+        line(3, "if ((cells[s] & CELL_MASK) >>> SIDE_BITS <= CAPACITY[s]) {");
+        line(4, "return 0;");
+        line(3, "}");
+        line(3, "_cells = cells;");
+        line(3, "_player = player;");
+        line(3, "_owned = owned;");
+        if (_wide) {
+            line(3, "_queued0 = _queued1 = _logged0 = _logged1 = 0;");
+        } else {
+            line(3, "_queued = _logged = 0;");
+        }
+        line(3, "_head = _length = 0;");
+        line(3, "enqueue(s);");
+        line(3, "int remaining = 0;");
+        line(3, "while (_length > 0 && _owned < %d) {", squares);
+        line(4, "if (remaining == 0) {");
+        line(5, "remaining = _length;");
+        line(5, "_depth += 1;");
+        line(4, "}");
+        line(4, "int p = _queue[_head];");
+        line(4, "_head = (_head + 1) & %d;", ring - 1);
+        line(4, "_length -= 1;");
+        line(4, "remaining -= 1;");
+        update(4, "_queued", "p", "&= ~");
+        line(4, "int spots = (cells[p] & CELL_MASK) >>> SIDE_BITS;");
+        line(4, "int capacity = CAPACITY[p];");
+        line(4, "if (spots <= capacity) {");
+        line(5, "continue;");
+        line(4, "}");
+        line(4, "_explosions += 1;");
+        line(4, "int r = p / %d, c = p - r * %d;", N, N);
+        line(4, "if (r < %d) {", N - 1);
+        line(5, "add(p + %d);", N);
+        line(4, "}");
+        line(4, "if (r > 0) {");
+        line(5, "add(p - %d);", N);
+        line(4, "}");
+        line(4, "if (c < %d) {", N - 1);
+        line(5, "add(p + 1);");
+        line(4, "}");
+        line(4, "if (c > 0) {");
+        line(5, "add(p - 1);");
+        line(4, "}");
+        line(4, "touch(p);");
+        line(4, "cells[p] = (byte) pack(player, spots - capacity);");
+        line(3, "}");
+        line(3, "_cells = null;");
+        line(3, "return _numChanges;");
+        line(2, "}");
+        line(0, "");
+        comment(2, "Add a spot of _player to square #M, queuing M if it "
+                + "becomes overfull.");
+        line(2, "private void add(int m) {");
+        line(3, "touch(m);");
+        line(3, "int old = _cells[m] & CELL_MASK;");
+        line(3, "if ((old & SIDE_MASK) != _player) {");
+        line(4, "_owned += 1;");
+        line(3, "}");
+        line(3, "int spots = (old >>> SIDE_BITS) + 1;");
+        line(3, "_cells[m] = (byte) pack(_player, spots);");
+        line(3, "boolean queued = %s;", test("_queued", "m", "!="));
+        line(3, "if (spots > CAPACITY[m] && !queued) {");
+        line(4, "enqueue(m);");
+        line(3, "}");
+        line(2, "}");
+        line(0, "");
+        comment(2, "Record the original contents of square #M, unless "
+                + "already recorded.");
+        line(2, "private void touch(int m) {");
+        line(3, "if (%s) {", test("_logged", "m", "=="));
+        update(4, "_logged", "m", "|= ");
+        line(4, "_changes[_numChanges] = (m << 8) | (_cells[m] & CELL_MASK);");
+        line(4, "_numChanges += 1;");
+        line(3, "}");
+        line(2, "}");
+        line(0, "");
+        comment(2, "Add square #M to the end of the queue.");
+        line(2, "private void enqueue(int m) {");
+        update(3, "_queued", "m", "|= ");
+        line(3, "_queue[(_head + _length) & %d] = m;", ring - 1);
+        line(3, "_length += 1;");
+        line(2, "}");
+        line(0, "");
+        comment(2, "The capacities of the squares.");
+        line(2, "private static final byte[] CAPACITY = capacities(%d);", N);
+        comment(2, "Ring buffer of squares to jump.");
+        line(2, "private final int[] _queue = new int[%d];", ring);
+        comment(2, "The squares being changed.");
+        line(2, "private byte[] _cells;");
+        comment(2, "The ordinal of the player, the number of squares it "
+                + "owns, and the start and length of the queue.");
+        line(2, "private int _player, _owned, _head, _length;");
+        if (_wide) {
+            comment(2, "Bit sets of the squares queued and recorded, for "
+                    + "squares 0-63 and 64 on.");
+            line(2, "private long _queued0, _queued1, _logged0, _logged1;");
+        } else {
+            comment(2, "Bit sets of the squares queued and recorded.");
+            line(2, "private long _queued, _logged;");
+        }
+        line(1, "}");
+    }
+
+    /**
+     * Return an expression comparing the bit for square VAR in the bit
+     * set SET to 0 with the operator OP.
+     */
+    private String test(String set, String var, String op) {
+        if (_wide) {
+            return String.format("((%s < 64 ? %s0 : %s1) & (1L << %s)) %s 0",
+                                 var, set, set, var, op);
+        }
+        return String.format("(%s & (1L << %s)) %s 0", set, var, op);
+    }
+
+    /**
+     * Write, at indentation level INDENT, a statement combining the bit
+     * for square VAR into the bit set SET with the assignment operator
+     * ASSIGN, one of "|= " and "&= ~".
+     */
+    private void update(int indent, String set, String var, String assign) {
+        if (_wide) {
+            line(indent, "if (%s < 64) {", var);
+            line(indent + 1, "%s0 %s(1L << %s);", set, assign, var);
+            line(indent, "} else {");
+            line(indent + 1, "%s1 %s(1L << %s);", set, assign, var);
+            line(indent, "}");
+        } else {
+            line(indent, "%s %s(1L << %s);", set, assign, var);
+        }
+    }
+
+    /**
+     * Write a documentation comment with text TEXT at indentation level
+     * INDENT, filling lines to at most 80 characters.
+     */
+    private void comment(int indent, String text) {
+        line(indent, "/**");
+        StringBuilder current = new StringBuilder();
+        int width = 80 - 4 * indent - " * ".length();
+        for (String word : text.split(" ")) {
+            if (current.length() > 0
+                && current.length() + 1 + word.length() > width) {
+                line(indent, " * %s", current);
+                current.setLength(0);
+            }
+            if (current.length() > 0) {
+                current.append(' ');
+            }
+            current.append(word);
+        }
+        line(indent, " * %s", current);
+        line(indent, " */");
+    }
+
+    /**
+     * Write FORMAT, formatted with ARGS, as a line at indentation level
+     * INDENT (four spaces per level).
+     */
+    private void line(int indent, String format, Object... args) {
+        String text = String.format(format, args);
+        if (text.isEmpty()) {
+            _out.println();
+        } else {
+            _out.println("    ".repeat(indent) + text);
+        }
+    }
+
+    /**
+     * Where the source is written.
+     */
+    private final PrintStream _out;
+
+    /**
+     * True iff the kernel being written uses two-word bit sets.
+     */
+    private boolean _wide;
+}
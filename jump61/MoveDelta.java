@@ -0,0 +1,205 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.Square.CELL_MASK;
+
+/**
+ * A record of the effects of one move: the squares it changed, with
+ * their packed contents (see Square.pack) before and after, the number
+ * of jumps (explosions) in its cascade, and the depth of the cascade.
+ * The depth is the number of generations of jumps: 1 if only the square
+ * played on jumped, 2 if some of its neighbors then jumped, and so on.
+ * <p>
+ * A MoveDelta is filled in by Board.addSpot(PLAYER, N, DELTA), and
+ * reuses its arrays, so that recording a move allocates nothing once the
+ * arrays are large enough.  The changes are listed in no particular
+ * order, and each changed square appears once.
+ *
+ * @author Bernie Miao
+ */
+final class MoveDelta {
+
+    /**
+     * An empty delta.
+     */
+    MoveDelta() {
+        _squares = new int[INITIAL_SIZE];
+        _contents = new char[INITIAL_SIZE];
+    }
+
+    /**
+     * Start recording a move by PLAYER on square #N of a board with SIZE
+     * squares on a side.
+     */
+    void start(int size, Side player, int n) {
+        _boardSize = size;
+        _player = player;
+        _move = n;
+        _length = 0;
+        _explosions = _depth = 0;
+    }
+
+    /**
+     * Record that square #N changed from OLD to CELL, unless they are
+     * equal.
+     */
+    void add(int n, int old, int cell) {
+        old &= CELL_MASK;
+        cell &= CELL_MASK;
+        if (old == cell) {
+            return;
+        }
+        if (_length == _squares.length) {
+            _squares = Arrays.copyOf(_squares, 2 * _length);
+            _contents = Arrays.copyOf(_contents, 2 * _length);
+        }
+        _squares[_length] = n;
+        _contents[_length] = (char) ((old << 8) | cell);
+        _length += 1;
+    }
+
+    /**
+     * Record that the move's cascade had EXPLOSIONS jumps in DEPTH
+     * generations.
+     */
+    void finish(int explosions, int depth) {
+        _explosions = explosions;
+        _depth = depth;
+    }
+
+    /**
+     * Make me a copy of OTHER, reusing my arrays if they are large
+     * enough.
+     */
+    void copy(MoveDelta other) {
+        if (_squares.length < other._length) {
+            _squares = new int[other._length];
+            _contents = new char[other._length];
+        }
+        System.arraycopy(other._squares, 0, _squares, 0, other._length);
+        System.arraycopy(other._contents, 0, _contents, 0, other._length);
+        _length = other._length;
+        _boardSize = other._boardSize;
+        _player = other._player;
+        _move = other._move;
+        _explosions = other._explosions;
+        _depth = other._depth;
+    }
+
+    /**
+     * Return the player who made the move.
+     */
+    Side player() {
+        return _player;
+    }
+
+    /**
+     * Return the number of the square played on.
+     */
+    int move() {
+        return _move;
+    }
+
+    /**
+     * Return the number of squares changed.
+     */
+    int size() {
+        return _length;
+    }
+
+    /**
+     * Return the square number of the Ith change, 0 <= I < size().
+     */
+    int square(int i) {
+        return _squares[i];
+    }
+
+    /**
+     * Return the packed contents before the move of the square of the
+     * Ith change.
+     */
+    int oldCell(int i) {
+        return _contents[i] >>> 8;
+    }
+
+    /**
+     * Return the packed contents after the move of the square of the
+     * Ith change.
+     */
+    int newCell(int i) {
+        return _contents[i] & CELL_MASK;
+    }
+
+    /**
+     * Return the number of jumps in the move's cascade.
+     */
+    int explosions() {
+        return _explosions;
+    }
+
+    /**
+     * Return the number of generations of jumps in the move's cascade.
+     */
+    int depth() {
+        return _depth;
+    }
+
+    /**
+     * Returns a one-line summary of the move and its effects, for
+     * logging.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s %d %d: %d changed, %d jumps, depth %d",
+                             _player, _move / _boardSize + 1,
+                             _move % _boardSize + 1, _length, _explosions,
+                             _depth);
+    }
+
+    /**
+     * Initial capacity of _squares and _contents.
+     */
+    private static final int INITIAL_SIZE = 16;
+
+    /**
+     * The square numbers of the changes.
+     */
+    private int[] _squares;
+
+    /**
+     * The contents of the squares in _squares before and after the move,
+     * each (old << 8) | new.
+     */
+    private char[] _contents;
+
+    /**
+     * The number of changes recorded.
+     */
+    private int _length;
+
+    /**
+     * The size of the board.
+     */
+    private int _boardSize;
+
+    /**
+     * The player who moved.
+     */
+    private Side _player;
+
+    /**
+     * The square played on.
+     */
+    private int _move;
+
+    /**
+     * Number of jumps.
+     */
+    private int _explosions;
+
+    /**
+     * Number of generations of jumps.
+     */
+    private int _depth;
+}
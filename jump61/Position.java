@@ -0,0 +1,509 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.Side.*;
+import static jump61.Square.CELL_MASK;
+import static jump61.Square.INITIAL_CELL;
+import static jump61.Square.pack;
+import static jump61.Square.sideOrdinalOf;
+import static jump61.Square.spotsOf;
+
+/**
+ * An immutable Jump61 position.  Playing a move on a Position produces
+ * a new Position and leaves the original unchanged, so Positions may be
+ * shared freely among threads without locking.
+ * <p>
+ * The squares are held as packed squares (see Square.pack) in one array
+ * per row.  A move copies only the rows its cascade touches; all other
+ * rows are shared with the parent position.  Thus a position that
+ * differs from its parent by a small cascade costs little more than its
+ * array of rows, and a search may keep many sibling positions alive
+ * cheaply.
+ *
+ * @author Bernie Miao
+ */
+final class Position {
+
+    /**
+     * Return the position currently on BOARD.
+     */
+    static Position of(Board board) {
+        int N = board.size();
+        byte[] cells = board.getCells();
+        byte[][] rows = new byte[N][];
+        for (int r = 0; r < N; r += 1) {
+            rows[r] = Arrays.copyOfRange(cells, r * N, r * N + N);
+        }
+        return new Position(Geometry.of(N), rows, board.numPieces(),
+                            board.numOfSide(RED), board.numOfSide(BLUE),
+                            board.zobristKey());
+    }
+
+    /**
+     * Return the initial position on an N x N board.
+     */
+    static Position initial(int N) {
+        byte[] row = new byte[N];
+        Arrays.fill(row, (byte) INITIAL_CELL);
+        byte[][] rows = new byte[N][];
+        Arrays.fill(rows, row);
+        return new Position(Geometry.of(N), rows, N * N, 0, 0, 0);
+    }
+
+    /**
+     * A position with the neighbor structure GEOMETRY, whose rows of
+     * packed squares are ROWS, with NUMPIECES spots in all, REDCOUNT red
+     * and BLUECOUNT blue squares, and Zobrist key KEY.  Takes ownership
+     * of ROWS.
+     */
+    private Position(Geometry geometry, byte[][] rows, int numPieces,
+                     int redCount, int blueCount, long key) {
+        _geometry = geometry;
+        _rows = rows;
+        _numPieces = numPieces;
+        _redCount = redCount;
+        _blueCount = blueCount;
+        _key = key;
+    }
+
+    /**
+     * Return the number of rows and of columns of this position.
+     */
+    int size() {
+        return _rows.length;
+    }
+
+    /**
+     * Return the neighbor structure of this position.
+     */
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    /**
+     * Return the packed square #N (see Square.pack).
+     */
+    int cell(int n) {
+        int N = _rows.length;
+        return _rows[n / N][n % N] & CELL_MASK;
+    }
+
+    /**
+     * Return the contents of square #N.
+     */
+    Square get(int n) {
+        return Square.square(cell(n));
+    }
+
+    /**
+     * Return the contents of the square at row R, column C,
+     * 1 <= R, C <= size().
+     */
+    Square get(int r, int c) {
+        return Square.square(_rows[r - 1][c - 1] & CELL_MASK);
+    }
+
+    /**
+     * Return the total number of spots in this position.
+     */
+    int numPieces() {
+        return _numPieces;
+    }
+
+    /**
+     * Return the number of squares of given SIDE.
+     */
+    int numOfSide(Side side) {
+        switch (side) {
+        case RED:
+            return _redCount;
+        case BLUE:
+            return _blueCount;
+        default:
+            return _rows.length * _rows.length - _redCount - _blueCount;
+        }
+    }
+
+    /**
+     * Returns the Side of the player who would be next to move.  If the
+     * game is won, this will return the loser (assuming legal position).
+     */
+    Side whoseMove() {
+        return ((_numPieces + size()) & 1) == 0 ? RED : BLUE;
+    }
+
+    /**
+     * Returns the winner of this position, if the game is over, and
+     * otherwise null.
+     */
+    Side getWinner() {
+        int numSquares = _rows.length * _rows.length;
+        if (_redCount == numSquares) {
+            return RED;
+        } else if (_blueCount == numSquares) {
+            return BLUE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true iff it would be legal for PLAYER to add a spot to
+     * square #N in this position.
+     */
+    boolean isLegal(Side player, int n) {
+        return whoseMove() == player
+            && player.playableSquare(get(n).getSide());
+    }
+
+    /**
+     * Return the Zobrist key of this position, equal to the zobristKey()
+     * of any Board holding it.
+     */
+    long zobristKey() {
+        return _key;
+    }
+
+    /**
+     * Return a new Board holding this position, with no undo history.
+     */
+    Board toBoard() {
+        Board result = new Board(size());
+        result.setContents(size(), toCells());
+        return result;
+    }
+
+    /**
+     * Return a fresh array of my packed squares in square-number order.
+     */
+    byte[] toCells() {
+        int N = _rows.length;
+        byte[] cells = new byte[N * N];
+        for (int r = 0; r < N; r += 1) {
+            System.arraycopy(_rows[r], 0, cells, r * N, N);
+        }
+        return cells;
+    }
+
+    /**
+     * Return the position that results from the player to move adding a
+     * spot to square #N.  Assumes isLegal(whoseMove(), N).
+     */
+    Position play(int n) {
+        return play(whoseMove(), n);
+    }
+
+    /**
+     * Return the position that results from PLAYER adding a spot to
+     * square #N, jumping exactly as Board.addSpot does.  Assumes
+     * isLegal(PLAYER, N).
+     */
+    Position play(Side player, int n) {
+        return new Move(this, player).apply(n);
+    }
+
+    /**
+     * Return true iff rows #R of this position and of OTHER are the same
+     * array.  For testing.
+     */
+    boolean sharesRow(Position other, int r) {
+        return _rows[r] == other._rows[r];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Position)) {
+            return false;
+        }
+        Position other = (Position) obj;
+        if (other._key != _key || other._rows.length != _rows.length) {
+            return false;
+        }
+        for (int r = 0; r < _rows.length; r += 1) {
+            if (!Arrays.equals(_rows[r], other._rows[r])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(_key);
+    }
+
+    @Override
+    public String toString() {
+        return toBoard().toString();
+    }
+
+    /**
+     * The construction of the successor of a position by one move.  A
+     * Move starts out sharing all rows with its parent, and copies each
+     * row the first time it changes.
+     */
+    private static final class Move {
+
+        /**
+         * A Move by PLAYER from PARENT.
+         */
+        Move(Position parent, Side player) {
+            _geometry = parent._geometry;
+            _size = parent._rows.length;
+            _rows = parent._rows.clone();
+            _copied = new boolean[_size];
+            _numPieces = parent._numPieces;
+            _redCount = parent._redCount;
+            _blueCount = parent._blueCount;
+            _key = parent._key;
+            _player = player;
+        }
+
+        /**
+         * Add a spot to square #N, do all resulting jumping, and return
+         * the resulting Position.
+         */
+        Position apply(int n) {
+            setCell(n, pack(_player, spotsOf(cell(n)) + 1));
+            if (getWinner() == null && overfull(n)) {
+                jump(n);
+            }
+            return new Position(_geometry, _rows, _numPieces, _redCount,
+                                _blueCount, _key);
+        }
+
+        /**
+         * Do all jumping, assuming that initially, S is the only square
+         * that is over-full.  Squares are processed in the same order as
+         * by Board.jump.
+         */
+        private void jump(int s) {
+            Geometry geometry = _geometry;
+            WorkQueue queue = WORK_QUEUE.get();
+            queue.start(_size * _size);
+            queue.add(s);
+            while (!queue.isEmpty() && getWinner() == null) {
+                int process = queue.remove();
+                if (!overfull(process)) {
+                    continue;
+                }
+                int pointsLost = geometry.neighbors(process);
+                for (int k = 0; k < pointsLost; k += 1) {
+                    int neighbor = geometry.neighbor(process, k);
+                    setCell(neighbor,
+                            pack(_player, spotsOf(cell(neighbor)) + 1));
+                    if (overfull(neighbor)) {
+                        queue.add(neighbor);
+                    }
+                }
+                setCell(process,
+                        pack(_player, spotsOf(cell(process)) - pointsLost));
+            }
+            queue.clear();
+        }
+
+        /**
+         * Return the packed square #N.
+         */
+        private int cell(int n) {
+            return _rows[n / _size][n % _size] & CELL_MASK;
+        }
+
+        /**
+         * Return true iff square #N is overfull.
+         */
+        private boolean overfull(int n) {
+            return spotsOf(cell(n)) > _geometry.neighbors(n);
+        }
+
+        /**
+         * Returns the winner so far, or null.
+         */
+        private Side getWinner() {
+            int numSquares = _size * _size;
+            if (_redCount == numSquares) {
+                return RED;
+            } else if (_blueCount == numSquares) {
+                return BLUE;
+            }
+            return null;
+        }
+
+        /**
+         * Set square #N to the packed square CELL, copying its row first
+         * if it is still shared, and update the counts and key.
+         */
+        private void setCell(int n, int cell) {
+            int r = n / _size;
+            if (!_copied[r]) {
+                _rows[r] = _rows[r].clone();
+                _copied[r] = true;
+            }
+            int old = _rows[r][n % _size] & CELL_MASK;
+            _rows[r][n % _size] = (byte) cell;
+            _numPieces += spotsOf(cell) - spotsOf(old);
+            _redCount += count(cell, RED) - count(old, RED);
+            _blueCount += count(cell, BLUE) - count(old, BLUE);
+            _key ^= _geometry.zobrist(n, old) ^ _geometry.zobrist(n, cell);
+        }
+
+        /**
+         * Return 1 if the packed square CELL belongs to SIDE, else 0.
+         */
+        private static int count(int cell, Side side) {
+            return sideOrdinalOf(cell) == side.ordinal() ? 1 : 0;
+        }
+
+        /**
+         * The neighbor structure of the board.
+         */
+        private final Geometry _geometry;
+        /**
+         * The number of rows and of columns.
+         */
+        private final int _size;
+        /**
+         * The rows of the new position.
+         */
+        private final byte[][] _rows;
+        /**
+         * _copied[R] is true iff _rows[R] is no longer shared with the
+         * parent.
+         */
+        private final boolean[] _copied;
+        /**
+         * The player moving.
+         */
+        private final Side _player;
+        /**
+         * The number of spots, of red squares, and of blue squares.
+         */
+        private int _numPieces, _redCount, _blueCount;
+        /**
+         * The Zobrist key of the new position.
+         */
+        private long _key;
+    }
+
+    /**
+     * A queue of distinct square numbers, used by Move.jump.  Positions
+     * are immutable and shared among threads, so each thread has its own
+     * queue (see WORK_QUEUE), which grows as needed and is then reused,
+     * so that cascades allocate nothing but the rows they copy.
+     */
+    private static final class WorkQueue {
+
+        /**
+         * Prepare to hold square numbers less than NUMSQUARES.  Assumes
+         * I am empty.
+         */
+        void start(int numSquares) {
+            int words = (numSquares + 63) >>> 6;
+            if (_members.length < words) {
+                _members = new long[words];
+            }
+        }
+
+        /**
+         * Return true iff I hold no squares.
+         */
+        boolean isEmpty() {
+            return _length == 0;
+        }
+
+        /**
+         * Add square #N to my end, if it is not already in me.
+         */
+        void add(int n) {
+            if ((_members[n >>> 6] & (1L << n)) != 0) {
+                return;
+            }
+            _members[n >>> 6] |= 1L << n;
+            if (_length == _queue.length) {
+                int[] queue = new int[2 * _queue.length];
+                int first = _queue.length - _head;
+                System.arraycopy(_queue, _head, queue, 0, first);
+                System.arraycopy(_queue, 0, queue, first, _head);
+                _queue = queue;
+                _head = 0;
+            }
+            int tail = _head + _length;
+            _queue[tail >= _queue.length ? tail - _queue.length : tail] = n;
+            _length += 1;
+        }
+
+        /**
+         * Remove and return my first square number.
+         */
+        int remove() {
+            int n = _queue[_head];
+            _members[n >>> 6] &= ~(1L << n);
+            _head = _head + 1 == _queue.length ? 0 : _head + 1;
+            _length -= 1;
+            return n;
+        }
+
+        /**
+         * Remove all my squares.
+         */
+        void clear() {
+            while (!isEmpty()) {
+                remove();
+            }
+            _head = 0;
+        }
+
+        /**
+         * Circular buffer of my squares, in order starting at _head.
+         */
+        private int[] _queue = new int[INITIAL_QUEUE_SIZE];
+        /**
+         * Index of my first square in _queue, and my number of squares.
+         */
+        private int _head, _length;
+        /**
+         * Bit set of the square numbers in me.
+         */
+        private long[] _members = new long[0];
+    }
+
+    /**
+     * Initial capacity of a WorkQueue.
+     */
+    private static final int INITIAL_QUEUE_SIZE = 16;
+
+    /**
+     * The WorkQueue of each thread.
+     */
+    private static final ThreadLocal<WorkQueue> WORK_QUEUE =
+        ThreadLocal.withInitial(WorkQueue::new);
+
+    /**
+     * The neighbor structure of the board.
+     */
+    private final Geometry _geometry;
+
+    /**
+     * The packed squares of row #R (numbered from 0) are _rows[R].  Row
+     * arrays may be shared with other Positions and are never modified.
+     */
+    private final byte[][] _rows;
+
+    /**
+     * The total number of spots.
+     */
+    private final int _numPieces;
+
+    /**
+     * The numbers of red and of blue squares.
+     */
+    private final int _redCount, _blueCount;
+
+    /**
+     * The Zobrist key of this position.
+     */
+    private final long _key;
+}
@@ -0,0 +1,313 @@
+package jump61;
+
+import static jump61.Side.*;
+import static jump61.Square.pack;
+import static jump61.Square.sideOf;
+import static jump61.Square.spotsOf;
+
+/**
+ * Compact binary and textual encodings of Jump61 positions.
+ * <p>
+ * The binary encoding of an N x N position occupies encodedLength(N)
+ * longs: a header holding MAGIC and N, followed by one 4-bit nibble per
+ * square, 16 to a long, in square-number order starting with the low
+ * nibble.  A nibble is 0 for a white square, S for a red square with S
+ * spots, and MAX_SPOTS + S for a blue square with S spots, where
+ * 1 <= S <= MAX_SPOTS.
+ * <p>
+ * In either encoding, no square may hold more spots than it has
+ * neighbors unless one side holds every square, as when a game ends
+ * in the middle of a cascade.
+ * <p>
+ * The text notation is the size, a colon, and the rows separated by
+ * slashes.  Each square of a row is written as in a board dump but
+ * without spaces: '-' for a white square, or its number of spots
+ * followed by 'r' or 'b'.  For example, the 2 x 2 board with two red
+ * spots in the upper left and one blue spot in the lower right is
+ * "2:2r-/-1b".
+ * <p>
+ * A PositionCodec reuses its buffers, so that encoding and decoding
+ * allocate nothing beyond their results.  It is not safe for use by
+ * more than one thread at a time.
+ *
+ * @author Bernie Miao
+ */
+class PositionCodec {
+
+    /**
+     * Tag identifying the header of a binary encoding.
+     */
+    static final long MAGIC = 0x4a756d70L;
+
+    /**
+     * The most spots on a square that the binary encoding can represent.
+     */
+    static final int MAX_SPOTS = 7;
+
+    /**
+     * Number of squares encoded in each long.
+     */
+    private static final int SQUARES_PER_LONG = Long.SIZE / 4;
+
+    /**
+     * Return the number of longs in the binary encoding of an N x N
+     * position.
+     */
+    static int encodedLength(int N) {
+        return 1 + (N * N + SQUARES_PER_LONG - 1) / SQUARES_PER_LONG;
+    }
+
+    /**
+     * Return the binary encoding of the position on BOARD.
+     */
+    long[] encode(Board board) {
+        long[] result = new long[encodedLength(board.size())];
+        encode(board, result, 0);
+        return result;
+    }
+
+    /**
+     * Write the binary encoding of the position on BOARD into
+     * DEST[OFFSET ..], returning the number of longs written.
+     */
+    int encode(Board board, long[] dest, int offset) {
+        int N = board.size();
+        int length = encodedLength(N);
+        byte[] cells = board.getCells();
+        dest[offset] = (MAGIC << Integer.SIZE) | N;
+        for (int k = 1; k < length; k += 1) {
+            dest[offset + k] = 0;
+        }
+        for (int n = 0; n < N * N; n += 1) {
+            long nibble = toNibble(cells[n]);
+            dest[offset + 1 + n / SQUARES_PER_LONG] |=
+                nibble << (4 * (n % SQUARES_PER_LONG));
+        }
+        return length;
+    }
+
+    /**
+     * Set BOARD to the position whose binary encoding starts at
+     * SRC[OFFSET], returning the number of longs read.  As for
+     * Board.setContents, clears BOARD's undo history.  Throws a
+     * GameException if SRC[OFFSET ..] does not hold a valid encoding.
+     */
+    int decode(long[] src, int offset, Board board) {
+        if (offset < 0 || offset >= src.length) {
+            throw new GameException("invalid position encoding");
+        }
+        long header = src[offset];
+        int N = (int) header;
+        if (header >>> Integer.SIZE != MAGIC || N < 2
+            || N > Defaults.MAX_BOARD_SIZE
+            || src.length - offset < encodedLength(N)) {
+            throw new GameException("invalid position encoding");
+        }
+        byte[] cells = cells(N);
+        for (int n = 0; n < N * N; n += 1) {
+            long word = src[offset + 1 + n / SQUARES_PER_LONG];
+            int nibble = (int) (word >>> (4 * (n % SQUARES_PER_LONG))) & 0xf;
+            if (nibble > 2 * MAX_SPOTS) {
+                throw new GameException("invalid position encoding");
+            }
+            cells[n] = (byte) fromNibble(nibble);
+        }
+        if (!possible(N, cells)) {
+            throw new GameException("invalid position encoding");
+        }
+        board.setContents(N, cells);
+        return encodedLength(N);
+    }
+
+    /**
+     * Return the text notation for the position on BOARD.
+     */
+    String toText(Board board) {
+        _text.setLength(0);
+        appendText(board, _text);
+        return _text.toString();
+    }
+
+    /**
+     * Append the text notation for the position on BOARD to OUT.
+     */
+    void appendText(Board board, StringBuilder out) {
+        int N = board.size();
+        byte[] cells = board.getCells();
+        out.append(N).append(':');
+        for (int n = 0; n < N * N; n += 1) {
+            if (n > 0 && n % N == 0) {
+                out.append('/');
+            }
+            Side side = sideOf(cells[n]);
+            if (side == WHITE) {
+                out.append('-');
+            } else {
+                out.append(spotsOf(cells[n]))
+                    .append(side == RED ? 'r' : 'b');
+            }
+        }
+    }
+
+    /**
+     * Set BOARD to the position whose text notation is TEXT.  As for
+     * Board.setContents, clears BOARD's undo history.  Throws a
+     * GameException if TEXT is not valid notation.
+     */
+    void fromText(CharSequence text, Board board) {
+        int len = text.length();
+        _pos = 0;
+        int N = readNumber(text, Defaults.MAX_BOARD_SIZE);
+        if (N < 2) {
+            throw badText(text);
+        }
+        expect(text, ':');
+        byte[] cells = cells(N);
+        for (int n = 0; n < N * N; n += 1) {
+            if (n > 0 && n % N == 0) {
+                expect(text, '/');
+            }
+            if (_pos < len && text.charAt(_pos) == '-') {
+                cells[n] = (byte) Square.INITIAL_CELL;
+                _pos += 1;
+            } else {
+                int spots = readNumber(text, MAX_TEXT_SPOTS);
+                if (spots == 0 || _pos == len) {
+                    throw badText(text);
+                }
+                char c = text.charAt(_pos);
+                if (c != 'r' && c != 'b') {
+                    throw badText(text);
+                }
+                cells[n] = (byte) pack(c == 'r' ? RED : BLUE, spots);
+                _pos += 1;
+            }
+        }
+        if (_pos != len || !possible(N, cells)) {
+            throw badText(text);
+        }
+        board.setContents(N, cells);
+    }
+
+    /**
+     * Read the decimal numeral at position _pos of TEXT, advancing _pos
+     * past it, and return its value.  Throws a GameException if there is
+     * no numeral or its value exceeds MAX.
+     */
+    private int readNumber(CharSequence text, int max) {
+        int start = _pos;
+        int value = 0;
+        while (_pos < text.length() && isDigit(text.charAt(_pos))) {
+            value = 10 * value + text.charAt(_pos) - '0';
+            if (value > max) {
+                throw badText(text);
+            }
+            _pos += 1;
+        }
+        if (_pos == start) {
+            throw badText(text);
+        }
+        return value;
+    }
+
+    /**
+     * Skip the character C at position _pos of TEXT, throwing a
+     * GameException if it is not there.
+     */
+    private void expect(CharSequence text, char c) {
+        if (_pos == text.length() || text.charAt(_pos) != c) {
+            throw badText(text);
+        }
+        _pos += 1;
+    }
+
+    /**
+     * Return true iff no square of the N x N position whose packed
+     * squares are CELLS[0 .. N*N-1] holds more spots than it has
+     * neighbors, unless one side holds every square.
+     */
+    private static boolean possible(int N, byte[] cells) {
+        Geometry geometry = Geometry.of(N);
+        boolean overfull = false;
+        int red, blue;
+        red = blue = 0;
+        for (int n = 0; n < N * N; n += 1) {
+            overfull |= spotsOf(cells[n]) > geometry.neighbors(n);
+            red += sideOf(cells[n]) == RED ? 1 : 0;
+            blue += sideOf(cells[n]) == BLUE ? 1 : 0;
+        }
+        return !overfull || red == N * N || blue == N * N;
+    }
+
+    /**
+     * Return the nibble encoding the packed square CELL.
+     */
+    private static int toNibble(int cell) {
+        Side side = sideOf(cell);
+        int spots = spotsOf(cell);
+        if (side == WHITE) {
+            return 0;
+        } else if (spots > MAX_SPOTS) {
+            throw new GameException("too many spots to encode: " + spots);
+        } else {
+            return side == RED ? spots : MAX_SPOTS + spots;
+        }
+    }
+
+    /**
+     * Return the packed square encoded by NIBBLE.
+     */
+    private static int fromNibble(int nibble) {
+        if (nibble == 0) {
+            return Square.INITIAL_CELL;
+        } else if (nibble <= MAX_SPOTS) {
+            return pack(RED, nibble);
+        } else {
+            return pack(BLUE, nibble - MAX_SPOTS);
+        }
+    }
+
+    /**
+     * Return true iff C is a decimal digit.
+     */
+    private static boolean isDigit(char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    /**
+     * Return an exception reporting that TEXT is not valid notation.
+     */
+    private static GameException badText(CharSequence text) {
+        return GameException.error("invalid position: %s", text);
+    }
+
+    /**
+     * Return a buffer of at least N * N packed squares.
+     */
+    private byte[] cells(int N) {
+        if (_cells.length < N * N) {
+            _cells = new byte[N * N];
+        }
+        return _cells;
+    }
+
+    /**
+     * The most spots on a square accepted in text notation.
+     */
+    private static final int MAX_TEXT_SPOTS = 63;
+
+    /**
+     * Buffer for decoded squares.
+     */
+    private byte[] _cells = new byte[0];
+
+    /**
+     * Current position in the text being parsed by fromText.
+     */
+    private int _pos;
+
+    /**
+     * Buffer for toText.
+     */
+    private final StringBuilder _text = new StringBuilder();
+}
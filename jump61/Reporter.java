@@ -21,5 +21,11 @@ interface Reporter {
      *  the same meaning as in String.format. */
     void err(String format, Object... args);
 
+    /** Display TEXT as a message, exactly as written.  By default,
+     *  the same as msg("%s", TEXT). */
+    default void text(CharSequence text) {
+        msg("%s", text);
+    }
+
 }
 
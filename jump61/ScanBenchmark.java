@@ -0,0 +1,79 @@
+package jump61;
+
+import java.util.Random;
+
+import static jump61.Side.*;
+
+/**
+ * Compares the speed of the eight-squares-at-a-time scans of CellScan
+ * with that of the same scans made one square at a time, on random
+ * dense positions of increasing size.  Each timed scan counts the red
+ * and blue squares and the spots and finds the squares holding 2, 3,
+ * and 4 spots, as Board does when it loads a position.
+ * Usage: java jump61.ScanBenchmark [MAXSIZE [SECONDS]]
+ *
+ * @author Bernie Miao
+ */
+class ScanBenchmark {
+
+    /**
+     * Smallest size measured.
+     */
+    private static final int MIN_SIZE = 8;
+
+    /**
+     * Run the benchmark as described in the class comment, with
+     * command-line arguments ARGS.
+     */
+    public static void main(String... args) {
+        int maxSize = args.length > 0 ? Integer.parseInt(args[0])
+            : Defaults.MAX_BOARD_SIZE;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        long budget = (long) (seconds * 1e9);
+
+        System.out.printf("%6s %10s %14s %14s %8s%n", "size", "squares",
+                          "scalar (us)", "swar (us)", "speedup");
+        for (int N = MIN_SIZE; N <= maxSize; N *= 2) {
+            byte[] cells = new byte[N * N];
+            Random rand = new Random(N);
+            Geometry geometry = Geometry.of(N);
+            for (int n = 0; n < N * N; n += 1) {
+                cells[n] = (byte) Square.pack(rand.nextBoolean() ? RED : BLUE,
+                                              1 + rand.nextInt(
+                                                  geometry.neighbors(n)));
+            }
+            double scalar = CascadeBenchmark.time(budget,
+                                                  () -> scan(cells, false));
+            double swar = CascadeBenchmark.time(budget,
+                                                () -> scan(cells, true));
+            System.out.printf("%6d %10d %14.3f %14.3f %8.2f%n", N, N * N,
+                              scalar * 1e6, swar * 1e6, scalar / swar);
+        }
+    }
+
+    /**
+     * Scan CELLS as described in the class comment, using CellScan's
+     * eight-at-a-time methods iff SWAR and its scalar methods otherwise.
+     * Returns a value depending on all results, so that the scans cannot
+     * be optimized away.
+     */
+    private static long scan(byte[] cells, boolean swar) {
+        long result = 0;
+        for (int from = 0; from < cells.length; from += Long.SIZE) {
+            int to = Math.min(cells.length, from + Long.SIZE);
+            for (Side side : new Side[] { RED, BLUE }) {
+                result += Long.bitCount(
+                    swar ? CellScan.sideMask(cells, from, to, side.ordinal())
+                    : CellScan.sideMaskScalar(cells, from, to,
+                                              side.ordinal()));
+            }
+            for (int spots = 2; spots <= Geometry.MAX_NEIGHBORS; spots += 1) {
+                result ^= swar ? CellScan.spotsMask(cells, from, to, spots)
+                    : CellScan.spotsMaskScalar(cells, from, to, spots);
+            }
+        }
+        result += swar ? CellScan.spots(cells, 0, cells.length)
+            : CellScan.spotsScalar(cells, 0, cells.length);
+        return result;
+    }
+}
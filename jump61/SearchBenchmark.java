@@ -0,0 +1,91 @@
+package jump61;
+
+import java.util.Random;
+
+/**
+ * Measures how the AI's parallel search (see AI.findMove) scales with
+ * the number of threads: for 1, 2, 4, ... threads up to a maximum, the
+ * time to search a fixed position to a fixed depth, starting each time
+ * with an empty transposition table, and the number of positions
+ * visited per second by all threads together.  The position is reached
+ * by random moves from an empty board.  Each time is the least of
+ * REPEATS searches.
+ * Usage: java jump61.SearchBenchmark [SIZE [DEPTH [MAXTHREADS]]]
+ *
+ * @author Bernie Miao
+ */
+class SearchBenchmark {
+
+    /**
+     * Number of searches timed for each number of threads.
+     */
+    private static final int REPEATS = 3;
+
+    /**
+     * Number of random moves made to reach the position searched.
+     */
+    private static final int OPENING_MOVES = 12;
+
+    /**
+     * Run the benchmark as described in the class comment, with
+     * command-line arguments ARGS.
+     */
+    public static void main(String... args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+
+        Board board = new Board(size);
+        Random rand = new Random(size);
+        for (int k = 0; k < OPENING_MOVES && board.getWinner() == null;
+             k += 1) {
+            int n;
+            do {
+                n = rand.nextInt(size * size);
+            } while (!board.isLegal(board.whoseMove(), n));
+            board.addSpot(board.whoseMove(), n);
+        }
+        Game game = new Game(null, b -> { }, null, false);
+        AI ai = new AI(game, board.whoseMove(), 0);
+        search(game, ai, board, 1, depth);
+
+        System.out.printf("%d x %d board, depth %d%n", size, size, depth);
+        System.out.printf("%8s %12s %8s %14s %12s%n", "threads",
+                          "time (ms)", "speedup", "nodes", "nodes/sec");
+        double base = 0;
+        for (int threads = 1; true;
+             threads = Math.min(2 * threads, maxThreads)) {
+            double best = Double.MAX_VALUE;
+            long nodes = 0;
+            for (int k = 0; k < REPEATS; k += 1) {
+                double seconds = search(game, ai, board, threads, depth);
+                if (seconds < best) {
+                    best = seconds;
+                    nodes = ai.nodes();
+                }
+            }
+            if (threads == 1) {
+                base = best;
+            }
+            System.out.printf("%8d %12.1f %8.2f %14d %12.3g%n", threads,
+                              best * 1e3, base / best, nodes, nodes / best);
+            if (threads >= maxThreads) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Return the time in seconds taken by AI, a player in GAME, to search
+     * BOARD to depth DEPTH with THREADS threads, starting with an empty
+     * transposition table.
+     */
+    private static double search(Game game, AI ai, Board board, int threads,
+                                 int depth) {
+        game.transpositionTable().clear();
+        long start = System.nanoTime();
+        ai.findMove(board, threads, depth, Long.MAX_VALUE / 4);
+        return (System.nanoTime() - start) * 1e-9;
+    }
+}
@@ -0,0 +1,640 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static jump61.Side.*;
+import static jump61.TranspositionTable.EXACT;
+import static jump61.TranspositionTable.LOWER;
+import static jump61.TranspositionTable.MISS;
+import static jump61.TranspositionTable.UPPER;
+
+/**
+ * The game-tree search of an AI, with all the state it needs: a
+ * private copy of the position, on which moves are made and undone,
+ * and the move lists, killer moves, and history scores that order the
+ * moves tried.  Each Searcher is used by one thread at a time.  Several
+ * Searchers may search the same position at once, sharing a
+ * transposition table and a flag that stops them all (see AI).
+ *
+ * @author Bernie Miao
+ */
+final class Searcher {
+
+    /**
+     * Prepare to search POSITION, which is not over, using TABLE.  The
+     * search is abandoned when System.nanoTime() passes DEADLINE or when
+     * STOP is set.  History scores from the previous search are kept
+     * (see prepareOrdering).
+     */
+    void prepare(Board position, TranspositionTable table, long deadline,
+                 AtomicBoolean stop) {
+        _board = new Board(position);
+        _table = table;
+        _sizeKey = Zobrist.mix(-position.size());
+        _deadline = deadline;
+        _stop = stop;
+        _aborted = false;
+        _nodes = 0;
+        _depth = 0;
+        _move = -1;
+        prepareOrdering(_board);
+    }
+
+    /**
+     * Search the position given to prepare by iterative deepening: to
+     * depth FIRSTDEPTH, then FIRSTDEPTH + 1, and so on, until a win or
+     * loss is certain, the depth reaches MAXDEPTH, a search completes
+     * after System.nanoTime() passes SOFTDEADLINE, or the search is
+     * abandoned.  Then sets the stop flag, so that other Searchers of
+     * the same position stop too.  Afterward, move() is the move found
+     * by the last completed search, or, if none was completed, the best
+     * of the moves fully searched, or -1.
+     */
+    void iterate(int firstDepth, int maxDepth, long softDeadline) {
+        int sense = _board.whoseMove() == RED ? 1 : -1;
+        for (int depth = firstDepth; depth <= maxDepth; depth += 1) {
+            sortHistory();
+            _foundMove = -1;
+            int value = minMax(_board, depth, true, sense,
+                               Integer.MIN_VALUE, Integer.MAX_VALUE);
+            if (_aborted) {
+                if (_move == -1 && _foundMove >= 0) {
+                    _move = _foundMove;
+                }
+                break;
+            }
+            _depth = depth;
+            _move = _foundMove;
+            if (_move < 0 || value == Integer.MIN_VALUE
+                || value == Integer.MAX_VALUE
+                || System.nanoTime() - softDeadline > 0) {
+                break;
+            }
+        }
+        _stop.set(true);
+    }
+
+    /**
+     * Return the move found by the last search (see iterate).
+     */
+    int move() {
+        return _move;
+    }
+
+    /**
+     * Return the depth of the last completed search, or 0 if none.
+     */
+    int depth() {
+        return _depth;
+    }
+
+    /**
+     * Return the number of positions visited by the last search.
+     */
+    long nodes() {
+        return _nodes;
+    }
+
+    /**
+     * Return the number of searches of positions in the last search
+     * that were cut off (ended before all moves were tried).
+     */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /**
+     * Return the number of the cutoffs counted by cutoffs that happened
+     * after trying only the first move.
+     */
+    long firstMoveCutoffs() {
+        return _firstMoveCutoffs;
+    }
+
+    /**
+     * Return true iff no symmetry in SYMMETRIES (a set of symmetries of
+     * the current position, as returned by Board.symmetries) maps square
+     * MOVE to a lower-numbered square, according to GEOMETRY.  Moves for
+     * which this is false lead to rotations or reflections of positions
+     * reached by other moves, which have the same values.
+     */
+    private static boolean distinct(Geometry geometry, int symmetries,
+                                    int move) {
+        for (int t = 1; t < Geometry.SYMMETRIES; t += 1) {
+            if ((symmetries & (1 << t)) != 0
+                && geometry.symmetric(t, move) < move) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find a move from position BOARD and return its value, recording
+     * the move found in _foundMove iff SAVEMOVE. The move
+     * should have maximal value or have value > BETA if SENSE==1,
+     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
+     * DEPTH levels.  Searching at level 0 simply returns a static estimate
+     * of the board value and does not set _foundMove. If the game is over
+     * on BOARD, does not set _foundMove.  Each move is made on BOARD and
+     * then undone, so that BOARD is unchanged on return.  If the deadline
+     * passes or the search is stopped (see prepare), sets _aborted and
+     * returns at once, with a meaningless value
+     * and, at the top level, with _foundMove set to the best move among
+     * those fully searched (or -3 if none).  Except at the
+     * top level, a result in _table for the same position searched at
+     * least as deeply is used instead of searching when it suffices, and
+     * each result found is stored in _table.  Entries are keyed by the
+     * canonical form of the position (see Board.canonicalKey), so that
+     * rotations and reflections of a position share one entry, and
+     * their moves are recorded as squares of the canonical form.  Moves
+     * are tried in the order given by startMoves, and the first of
+     * equally good moves is the one found.
+     */
+    private int minMax(Board board, int depth, boolean saveMove,
+                       int sense, int alpha, int beta) {
+        _nodes += 1;
+        if ((_nodes & (CHECK_INTERVAL - 1)) == 0
+            && (System.nanoTime() - _deadline > 0 || _stop.get())) {
+            _aborted = true;
+        }
+        if (_aborted) {
+            return 0;
+        }
+        if (depth == 0 || board.getWinner() != null) {
+            return staticEval(board, 0);
+        }
+        Side player = sense == 1 ? RED : BLUE;
+        assert player == board.whoseMove();
+        long key = board.canonicalKey() ^ _sizeKey;
+        long entry = _table.probe(key);
+        if (!saveMove && entry != MISS
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == EXACT || (bound == LOWER && score >= beta)
+                || (bound == UPPER && score <= alpha)) {
+                _table.countCutoff();
+                return score;
+            }
+        }
+        int alpha0 = alpha, beta0 = beta;
+        int symmetries = saveMove ? board.symmetries() : 1;
+        int bestMove = 0 - 3;
+        int minMaxEval = sense == 1 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int ply = _ply;
+        int hashMove = entry == MISS || TranspositionTable.move(entry) < 0
+            ? -1 : board.fromCanonical(TranspositionTable.move(entry));
+        int tried = 0;
+        startMoves(board, player, ply, hashMove);
+        for (int move = nextMove(board, player, ply); move >= 0;
+             move = nextMove(board, player, ply)) {
+            if (symmetries != 1
+                && !distinct(board.geometry(), symmetries, move)) {
+                continue;
+            }
+            tried += 1;
+            board.addSpot(player, move);
+            _ply = ply + 1;
+            int eval = minMax(board, depth - 1, false, -sense, alpha, beta);
+            _ply = ply;
+            board.undo();
+            if (_aborted) {
+                break;
+            }
+            if (sense == 1) {
+                if (eval > minMaxEval || bestMove < 0) {
+                    bestMove = move;
+                }
+                minMaxEval = Math.max(minMaxEval, eval);
+                alpha = Math.max(alpha, eval);
+            } else {
+                if (eval < minMaxEval || bestMove < 0) {
+                    bestMove = move;
+                }
+                minMaxEval = Math.min(minMaxEval, eval);
+                beta = Math.min(beta, eval);
+            }
+            if (beta <= alpha) {
+                recordCutoff(board, player, move, depth, ply, tried == 1);
+                break;
+            }
+        }
+        endMoves(ply);
+        if (!_aborted) {
+            int bound = minMaxEval <= alpha0 ? UPPER
+                : minMaxEval >= beta0 ? LOWER : EXACT;
+            _table.store(key, depth, bound, minMaxEval,
+                         bestMove < 0 ? -1 : board.toCanonical(bestMove));
+        }
+        if (saveMove) {
+            _foundMove = bestMove;
+        }
+        return minMaxEval;
+    }
+
+    /**
+     * Prepare the move lists, killer moves, and history table for a
+     * search from position BOARD.  History scores from the previous
+     * search on a board of the same size are kept, but halved.
+     */
+    private void prepareOrdering(Board board) {
+        int squares = board.size() * board.size();
+        if (_history == null || _history[0].length != squares) {
+            int sides = Side.values().length;
+            _history = new int[sides][squares];
+            _historySquares = new int[sides][squares];
+            _historyIndex = new int[sides][squares];
+            for (int[] index : _historyIndex) {
+                Arrays.fill(index, Integer.MAX_VALUE);
+            }
+            _historyCounts = new int[sides];
+            _sortBuffer = new long[squares];
+            _moveLists = new long[TranspositionTable.MAX_DEPTH + 1][];
+            _specials = new long[TranspositionTable.MAX_DEPTH + 1][];
+        } else {
+            for (int s = 0; s < _history.length; s += 1) {
+                for (int i = 0; i < _historyCounts[s]; i += 1) {
+                    _history[s][_historySquares[s][i]] >>= 1;
+                }
+            }
+        }
+        Arrays.fill(_killers, -1);
+        _ply = 0;
+        _cutoffs = _firstMoveCutoffs = 0;
+    }
+
+    /**
+     * Arrange the squares in _historySquares in decreasing order of
+     * history score, dropping those whose scores are 0.  Called between
+     * searches, since nextMove relies on the order of the squares not
+     * changing during a search.
+     */
+    private void sortHistory() {
+        long[] buffer = _sortBuffer;
+        for (int s = 0; s < _history.length; s += 1) {
+            int[] squares = _historySquares[s], index = _historyIndex[s];
+            int count = 0;
+            for (int i = 0; i < _historyCounts[s]; i += 1) {
+                int n = squares[i];
+                index[n] = Integer.MAX_VALUE;
+                if (_history[s][n] > 0) {
+                    buffer[count] = ((long) _history[s][n] << Integer.SIZE)
+                        | (~n & 0xffffffffL);
+                    count += 1;
+                }
+            }
+            for (int i = count / 2 - 1; i >= 0; i -= 1) {
+                siftDown(buffer, i, count);
+            }
+            for (int i = count - 1; i > 0; i -= 1) {
+                long top = buffer[0];
+                buffer[0] = buffer[i];
+                buffer[i] = top;
+                siftDown(buffer, 0, i);
+            }
+            for (int i = 0; i < count; i += 1) {
+                squares[i] = ~(int) buffer[count - 1 - i];
+                index[squares[i]] = i;
+            }
+            _historyCounts[s] = count;
+        }
+    }
+
+    /**
+     * Start generating the moves of PLAYER on BOARD at PLY (see
+     * nextMove).  Moves are generated in four groups.  First come the
+     * "special" moves: HASHMOVE (the best move recorded in the
+     * transposition table, or -1), then moves onto PLAYER's critical
+     * squares, which cause jumps, in order of history score, then the
+     * killer moves at PLY (quiet moves that recently caused cutoffs at
+     * the same depth).  These are kept as a heap in _moveLists[PLY] and
+     * marked in _specials[PLY].  Next come the other moves in
+     * _historySquares, which is in decreasing order of history score as
+     * of the start of the search (see sortHistory), and last, all
+     * remaining moves, in order of square number.  The last two groups
+     * are found as they are needed, so that a search cut off early takes
+     * time proportional to the number of special moves rather than to
+     * the size of the board.
+     */
+    private void startMoves(Board board, Side player, int ply,
+                            int hashMove) {
+        int squares = board.size() * board.size();
+        if (_moveLists[ply] == null) {
+            _moveLists[ply] = new long[squares];
+            _specials[ply] = new long[(squares + 63) >>> 6];
+        }
+        long[] moves = _moveLists[ply], specials = _specials[ply];
+        long[] playable = board.playable(player);
+        long[] critical = board.critical(player);
+        int[] history = _history[player.ordinal()];
+        int count = 0;
+        if (hashMove >= 0 && hashMove < squares
+            && isMember(playable, hashMove)) {
+            count = addSpecial(moves, specials, count, hashMove,
+                               HASH_SCORE);
+        }
+        for (int w = 0; w < specials.length; w += 1) {
+            for (long bits = playable[w] & critical[w]; bits != 0;
+                 bits &= bits - 1) {
+                int move = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (!isMember(specials, move)) {
+                    count = addSpecial(moves, specials, count, move,
+                                       CAPTURE_SCORE + history[move]);
+                }
+            }
+        }
+        for (int k = 0; k < 2; k += 1) {
+            int move = _killers[2 * ply + k];
+            if (move >= 0 && isMember(playable, move)
+                && !isMember(specials, move)) {
+                count = addSpecial(moves, specials, count, move,
+                                   KILLER_SCORE + 1 - k);
+            }
+        }
+        for (int i = count / 2 - 1; i >= 0; i -= 1) {
+            siftDown(moves, i, count);
+        }
+        _numSpecials[ply] = _numLeft[ply] = count;
+        _historyNext[ply] = 0;
+        _historyEnd[ply] = _historyCounts[player.ordinal()];
+        _nextSquare[ply] = 0;
+    }
+
+    /**
+     * Return the next move of PLAYER on BOARD at PLY, in the order
+     * described at startMoves, or -1 if there are no more.
+     */
+    private int nextMove(Board board, Side player, int ply) {
+        int count = _numLeft[ply];
+        if (count > 0) {
+            long[] moves = _moveLists[ply];
+            long top = moves[0];
+            moves[0] = moves[count - 1];
+            moves[count - 1] = top;
+            siftDown(moves, 0, count - 1);
+            _numLeft[ply] = count - 1;
+            return ~(int) top;
+        }
+        long[] specials = _specials[ply];
+        long[] playable = board.playable(player);
+        int[] squares = _historySquares[player.ordinal()];
+        while (_historyNext[ply] < _historyEnd[ply]) {
+            int move = squares[_historyNext[ply]];
+            _historyNext[ply] += 1;
+            if (isMember(playable, move) && !isMember(specials, move)) {
+                return move;
+            }
+        }
+        int[] index = _historyIndex[player.ordinal()];
+        int move = board.nextPlayable(player, _nextSquare[ply]);
+        while (move >= 0 && (isMember(specials, move)
+                             || index[move] < _historyEnd[ply])) {
+            move = board.nextPlayable(player, move + 1);
+        }
+        _nextSquare[ply] = move < 0 ? Integer.MAX_VALUE : move + 1;
+        return move;
+    }
+
+    /**
+     * Finish generating moves at PLY, unmarking its special moves.
+     * Popping a heap leaves its entries in place, so all the special
+     * moves are still in _moveLists[PLY].
+     */
+    private void endMoves(int ply) {
+        long[] moves = _moveLists[ply], specials = _specials[ply];
+        for (int i = 0; i < _numSpecials[ply]; i += 1) {
+            int move = ~(int) moves[i];
+            specials[move >>> 6] &= ~(1L << move);
+        }
+    }
+
+    /**
+     * Add MOVE, with priority SCORE, to MOVES, which holds COUNT moves,
+     * and mark it in SPECIALS.  Returns the new number of moves.  The
+     * entries of MOVES are (priority << 32) | ~move, so that larger
+     * entries are tried first.
+     */
+    private static int addSpecial(long[] moves, long[] specials, int count,
+                                  int move, int score) {
+        moves[count] = ((long) score << Integer.SIZE) | (~move & 0xffffffffL);
+        specials[move >>> 6] |= 1L << move;
+        return count + 1;
+    }
+
+    /**
+     * Return true iff square #N is in the bit set BITS (represented as
+     * for Board.playable).
+     */
+    private static boolean isMember(long[] bits, int n) {
+        return (bits[n >>> 6] & (1L << n)) != 0;
+    }
+
+    /**
+     * Restore the heap property to the first COUNT entries of HEAP (each
+     * at least as large as those at indices 2i+1 and 2i+2), given that
+     * it holds except, perhaps, at index I.
+     */
+    private static void siftDown(long[] heap, int i, int count) {
+        long x = heap[i];
+        while (2 * i + 1 < count) {
+            int child = 2 * i + 1;
+            if (child + 1 < count && heap[child + 1] > heap[child]) {
+                child += 1;
+            }
+            if (heap[child] <= x) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = x;
+    }
+
+    /**
+     * Record that PLAYER's MOVE on BOARD caused a cutoff in a search of
+     * DEPTH levels at PLY, after trying only that move iff FIRST.  A
+     * quiet move (one that causes no jumps) becomes the first killer
+     * move at PLY, and MOVE's history score grows by DEPTH squared.
+     */
+    private void recordCutoff(Board board, Side player, int move,
+                              int depth, int ply, boolean first) {
+        _cutoffs += 1;
+        if (first) {
+            _firstMoveCutoffs += 1;
+        }
+        if (!isMember(board.critical(player), move)
+            && _killers[2 * ply] != move) {
+            _killers[2 * ply + 1] = _killers[2 * ply];
+            _killers[2 * ply] = move;
+        }
+        int s = player.ordinal();
+        if (_historyIndex[s][move] == Integer.MAX_VALUE) {
+            _historySquares[s][_historyCounts[s]] = move;
+            _historyIndex[s][move] = _historyCounts[s];
+            _historyCounts[s] += 1;
+        }
+        _history[s][move] = Math.min(_history[s][move] + depth * depth,
+                                     HISTORY_LIMIT);
+    }
+
+    /**
+     * Return a heuristic estimate of the value of board position B.
+     * Use WINNINGVALUE to indicate a win for Red and -WINNINGVALUE to
+     * indicate a win for Blue.
+     */
+    private static int staticEval(Board b, int winningValue) {
+        int value = 0;
+        if (b.getWinner() == RED) {
+            return Integer.MAX_VALUE;
+        } else if (b.getWinner() == BLUE) {
+            return Integer.MIN_VALUE;
+        }
+        value = b.numOfSide(RED) - b.numOfSide(BLUE);
+        return value;
+    }
+
+
+    /**
+     * The transposition table used by the current search, shared with
+     * other Searchers.
+     */
+    private TranspositionTable _table;
+
+    /**
+     * Combined with the canonical keys of positions to form their keys in
+     * _table, so that positions on boards of different sizes (on which
+     * different players may be to move) have different keys.
+     */
+    private long _sizeKey;
+
+    /**
+     * Move-ordering priorities (see startMoves) of the transposition-table
+     * move, of moves that cause jumps, and of killer moves.  History
+     * scores are below KILLER_SCORE.
+     */
+    private static final int
+        HASH_SCORE = 1 << 30,
+        CAPTURE_SCORE = 1 << 29,
+        KILLER_SCORE = 1 << 28,
+        HISTORY_LIMIT = KILLER_SCORE - 1;
+
+    /**
+     * The special moves at each ply of the current search, as heaps, and
+     * the sets of those moves (see startMoves).  Allocated as needed and
+     * reused.
+     */
+    private long[][] _moveLists, _specials;
+
+    /**
+     * For each ply: the number of special moves, the number not yet
+     * tried, the position in _historySquares of the next move to try
+     * and the number of squares there when the moves were started, and
+     * the square at which to continue scanning for other moves (see
+     * nextMove).
+     */
+    private final int[]
+        _numSpecials = new int[TranspositionTable.MAX_DEPTH + 1],
+        _numLeft = new int[TranspositionTable.MAX_DEPTH + 1],
+        _historyNext = new int[TranspositionTable.MAX_DEPTH + 1],
+        _historyEnd = new int[TranspositionTable.MAX_DEPTH + 1],
+        _nextSquare = new int[TranspositionTable.MAX_DEPTH + 1];
+
+    /**
+     * The two killer moves at each ply P, _killers[2P] and
+     * _killers[2P+1], most recent first, or -1.
+     */
+    private final int[] _killers =
+        new int[2 * (TranspositionTable.MAX_DEPTH + 1)];
+
+    /**
+     * History scores of squares for each side, indexed by side ordinal
+     * and square number: sums of the squares of the depths of searches
+     * in which moves to those squares caused cutoffs.
+     */
+    private int[][] _history;
+
+    /**
+     * For each side ordinal S, _historySquares[S][0 ..
+     * _historyCounts[S]-1] are the squares whose history scores for S
+     * are positive, in decreasing order of score as of the last call of
+     * sortHistory, followed by those that have become positive since.
+     */
+    private int[][] _historySquares;
+
+    /**
+     * See _historySquares.
+     */
+    private int[] _historyCounts;
+
+    /**
+     * _historyIndex[S][N] is the position of square N in
+     * _historySquares[S], or Integer.MAX_VALUE if it is not there.
+     */
+    private int[][] _historyIndex;
+
+    /**
+     * Scratch space for sortHistory.
+     */
+    private long[] _sortBuffer;
+
+    /**
+     * The number of moves from the top of the search to the position
+     * being searched.
+     */
+    private int _ply;
+
+    /**
+     * Counts of cutoffs and of cutoffs by the first move tried (see
+     * cutoffs and firstMoveCutoffs).
+     */
+    private long _cutoffs, _firstMoveCutoffs;
+
+    /**
+     * The number of calls of minMax between checks of the clock (a power
+     * of two).
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * The value of System.nanoTime() after which the current search is
+     * abandoned.
+     */
+    private long _deadline;
+
+    /**
+     * When set, all Searchers sharing it abandon their searches.
+     */
+    private AtomicBoolean _stop;
+
+    /**
+     * True iff the current search has been abandoned.
+     */
+    private boolean _aborted;
+
+    /**
+     * The number of calls of minMax in the current search.
+     */
+    private long _nodes;
+
+    /**
+     * The depth of the last completed search.
+     */
+    private int _depth;
+
+    /**
+     * The move found by the last completed search, or -1.
+     */
+    private int _move;
+
+    /**
+     * The position being searched.
+     */
+    private Board _board;
+
+    /**
+     * Used to convey moves discovered by minMax.
+     */
+    private int _foundMove;
+}
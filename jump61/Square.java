@@ -21,17 +21,65 @@ class Square {
     /** Return a (unique) Square controlled by SIDE with SPOTS spots on it.
      *  We memoize the creation of Squares to save time, since they are
      *  immutable objects.  As a special case, when SPOTS is 0 or SIDE
-     *  is WHITE, returns the value of INITIAL. */
+     *  is WHITE, returns the value of INITIAL.  Throws a GameException
+     *  if SPOTS > MAX_SPOTS. */
     static Square square(Side side, int spots) {
         if (spots == 0 || side == WHITE) {
             return INITIAL;
         }
+        if (spots > MAX_SPOTS) {
+            throw tooManySpots(spots);
+        }
         if (_allSquares[side.ordinal()][spots] == null) {
             _allSquares[side.ordinal()][spots] = new Square(side, spots);
         }
         return _allSquares[side.ordinal()][spots];
     }
 
+    /** Return the Square described by the packed square contents CELL,
+     *  as produced by pack. */
+    static Square square(int cell) {
+        return square(sideOf(cell), spotsOf(cell));
+    }
+
+    /** Return the packed encoding of a square occupied by SIDE with SPOTS
+     *  spots: the spot count in the upper bits and the ordinal of SIDE in
+     *  the low SIDE_BITS bits.  As for square, a square with no spots or
+     *  a WHITE square is always encoded as INITIAL_CELL.  Throws a
+     *  GameException if SPOTS > MAX_SPOTS. */
+    static int pack(Side side, int spots) {
+        if (spots == 0 || side == WHITE) {
+            return INITIAL_CELL;
+        }
+        if (spots > MAX_SPOTS) {
+            throw tooManySpots(spots);
+        }
+        return (spots << SIDE_BITS) | side.ordinal();
+    }
+
+    /** Return an exception reporting that SPOTS spots will not fit on a
+     *  square. */
+    private static GameException tooManySpots(int spots) {
+        return GameException.error("too many spots on a square: %d (at most"
+                                   + " %d)", spots, MAX_SPOTS);
+    }
+
+    /** Return the number of spots in the packed square contents CELL. */
+    static int spotsOf(int cell) {
+        return (cell & CELL_MASK) >>> SIDE_BITS;
+    }
+
+    /** Return the ordinal of the Side in the packed square contents
+     *  CELL. */
+    static int sideOrdinalOf(int cell) {
+        return cell & SIDE_MASK;
+    }
+
+    /** Return the Side in the packed square contents CELL. */
+    static Side sideOf(int cell) {
+        return SIDES[cell & SIDE_MASK];
+    }
+
     /** Return the Side controlling this Square. */
     Side getSide() {
         return _side;
@@ -48,9 +96,28 @@ class Square {
      * necessary to override .equals and .hashCode; the default implementations
      * work. */
 
-    /** Memo table for Squares, allowing spot values up to 9
-     *  (probably excessive). */
-    private static Square[][] _allSquares = new Square[3][10];
+    /** Number of low-order bits of a packed square holding its Side. */
+    static final int SIDE_BITS = 2;
+
+    /** Mask selecting the Side bits of a packed square. */
+    static final int SIDE_MASK = (1 << SIDE_BITS) - 1;
+
+    /** Mask selecting a packed square stored in a byte, undoing sign
+     *  extension. */
+    static final int CELL_MASK = 0xff;
+
+    /** The packed encoding of INITIAL. */
+    static final int INITIAL_CELL = (1 << SIDE_BITS) | WHITE.ordinal();
+
+    /** All Sides, indexed by ordinal. */
+    private static final Side[] SIDES = Side.values();
+
+    /** The largest number of spots in a packed square. */
+    static final int MAX_SPOTS = CELL_MASK >>> SIDE_BITS;
+
+    /** Memo table for Squares, allowing every spot count that a packed
+     *  square can hold. */
+    private static Square[][] _allSquares = new Square[3][MAX_SPOTS + 1];
 
     /** The Side occupying this Square. */
     private final Side _side;
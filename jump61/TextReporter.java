@@ -23,6 +23,12 @@ class TextReporter implements Reporter {
         System.out.println();
     }
 
+    @Override
+    public void text(CharSequence text) {
+        System.out.append(text);
+        System.out.println();
+    }
+
     @Override
     public void err(String format, Object... args) {
         System.err.printf(format, args);
@@ -0,0 +1,299 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size table of the results of searches of positions, keyed by
+ * Zobrist key (see Zobrist), so that a search that reaches a position
+ * again by a different order of moves can reuse what it learned there.
+ * <p>
+ * Each entry records the depth searched, the score found, whether that
+ * score is exact or only a lower or upper bound (because the search was
+ * cut off), and the best move found.  These are packed into one long
+ * (see pack), which is stored in a preallocated long[] next to the
+ * exclusive or of itself with the position's key.  A reader accepts an
+ * entry only if the exclusive or of the two longs it reads is the key it
+ * is looking for, so that an entry torn by concurrent writers reads as a
+ * miss rather than as wrong data.  Several threads may therefore share
+ * one table without locks; a few entries may be lost to races, which
+ * costs only search time.
+ * <p>
+ * The table is divided into buckets of WAYS entries.  A position is
+ * stored in the entry of its bucket that already holds it, if any, and
+ * otherwise replaces the entry of least value: entries left from
+ * earlier searches (see newSearch) go before current ones, and shallower
+ * entries before deeper ones.
+ *
+ * @author Bernie Miao
+ */
+final class TranspositionTable {
+
+    /**
+     * Bound types: the score stored is exact, a lower bound on the true
+     * score, or an upper bound on it.
+     */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /**
+     * The value of probe for a position not in the table.
+     */
+    static final long MISS = 0;
+
+    /**
+     * A table occupying about MEGABYTES megabytes (at least one bucket).
+     */
+    TranspositionTable(int megabytes) {
+        long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+        entries = Math.min(entries, MAX_ENTRIES);
+        int buckets = Integer.highestOneBit(
+            (int) Math.max(1, entries / WAYS));
+        _table = new long[buckets * WAYS * 2];
+        _bucketMask = buckets - 1;
+        _megabytes = megabytes;
+    }
+
+    /**
+     * Return the size of this table requested at its creation, in
+     * megabytes.
+     */
+    int megabytes() {
+        return _megabytes;
+    }
+
+    /**
+     * Return the number of entries this table can hold.
+     */
+    int capacity() {
+        return _table.length / 2;
+    }
+
+    /**
+     * Start a new search, so that entries stored from now on are
+     * preferred to those already stored when choosing entries to
+     * replace.
+     */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /**
+     * Remove all entries and reset the counts.
+     */
+    void clear() {
+        Arrays.fill(_table, 0);
+        _age = 0;
+        _probes.reset();
+        _hits.reset();
+        _cutoffs.reset();
+    }
+
+    /**
+     * Return the packed entry (see pack) for the position with key KEY,
+     * or MISS if there is none.  Counts a probe, and a hit if found.
+     */
+    long probe(long key) {
+        _probes.increment();
+        int first = bucket(key);
+        for (int i = first; i < first + 2 * WAYS; i += 2) {
+            long data = _table[i + 1];
+            if (data != MISS && (_table[i] ^ data) == key) {
+                _hits.increment();
+                return data;
+            }
+        }
+        return MISS;
+    }
+
+    /**
+     * Record that a search of DEPTH moves from the position with key KEY
+     * found score SCORE, which is of bound type BOUND, and best move
+     * MOVE (a square number, or -1 if none).
+     */
+    void store(long key, int depth, int bound, int score, int move) {
+        long data = pack(Math.min(depth, MAX_DEPTH), bound, score, move,
+                         _age);
+        int first = bucket(key);
+        int slot = first;
+        int worst = Integer.MAX_VALUE;
+        for (int i = first; i < first + 2 * WAYS; i += 2) {
+            long old = _table[i + 1];
+            if (old == MISS || (_table[i] ^ old) == key) {
+                slot = i;
+                break;
+            }
+            int value = depth(old) - (age(old) == _age ? 0 : AGE_PENALTY);
+            if (value < worst) {
+                worst = value;
+                slot = i;
+            }
+        }
+        _table[slot] = key ^ data;
+        _table[slot + 1] = data;
+    }
+
+    /**
+     * Count one use of an entry to end a search without searching it.
+     */
+    void countCutoff() {
+        _cutoffs.increment();
+    }
+
+    /**
+     * Return the number of probes.
+     */
+    long probes() {
+        return _probes.sum();
+    }
+
+    /**
+     * Return the number of probes that found an entry.
+     */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /**
+     * Return the number of searches ended by an entry (see
+     * countCutoff).
+     */
+    long cutoffs() {
+        return _cutoffs.sum();
+    }
+
+    /**
+     * Return the depth recorded in packed entry ENTRY.
+     */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /**
+     * Return the bound type recorded in packed entry ENTRY.
+     */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /**
+     * Return the score recorded in packed entry ENTRY.
+     */
+    static int score(long entry) {
+        return (int) (entry >>> SCORE_SHIFT);
+    }
+
+    /**
+     * Return the move recorded in packed entry ENTRY, or -1 if none.
+     */
+    static int move(long entry) {
+        return (int) (entry & MOVE_MASK) - 1;
+    }
+
+    /**
+     * Return the age recorded in packed entry ENTRY.
+     */
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    /**
+     * Return an entry recording DEPTH, BOUND, SCORE, MOVE, and AGE.
+     * The score occupies the top 32 bits, then come the depth, the
+     * bound type, the age, and the move plus 1.  Since BOUND is not 0,
+     * the result is never MISS.
+     */
+    private static long pack(int depth, int bound, int score, int move,
+                             int age) {
+        return ((long) score << SCORE_SHIFT)
+            | ((long) depth << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) age << AGE_SHIFT)
+            | (move + 1);
+    }
+
+    /**
+     * Return the index in _table of the first entry of KEY's bucket.
+     */
+    private int bucket(long key) {
+        return ((int) (key >>> 32) & _bucketMask) * 2 * WAYS;
+    }
+
+    /**
+     * The number of entries in each bucket.
+     */
+    static final int WAYS = 4;
+
+    /**
+     * The largest number of entries in a table.
+     */
+    private static final long MAX_ENTRIES = 1L << 28;
+
+    /**
+     * The number of bytes in an entry.
+     */
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /**
+     * The number of bits of a packed move (enough for one plus the
+     * largest square number).
+     */
+    private static final int MOVE_BITS = 21;
+
+    /**
+     * Layout of packed entries (see pack).
+     */
+    private static final int
+        AGE_BITS = 3,
+        BOUND_BITS = 2,
+        DEPTH_BITS = 6,
+        AGE_SHIFT = MOVE_BITS,
+        BOUND_SHIFT = AGE_SHIFT + AGE_BITS,
+        DEPTH_SHIFT = BOUND_SHIFT + BOUND_BITS,
+        SCORE_SHIFT = Integer.SIZE;
+
+    /**
+     * The largest depth recorded; greater depths are recorded as this.
+     */
+    static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+    /**
+     * Masks for the fields of packed entries.
+     */
+    private static final int
+        MOVE_MASK = (1 << MOVE_BITS) - 1,
+        AGE_MASK = (1 << AGE_BITS) - 1,
+        BOUND_MASK = (1 << BOUND_BITS) - 1;
+
+    /**
+     * The amount by which an entry from an earlier search counts as
+     * shallower than it is when choosing an entry to replace.
+     */
+    private static final int AGE_PENALTY = 8;
+
+    /**
+     * The entries: _table[2i] is the key of entry i exclusive-ored with
+     * _table[2i+1], which is the packed entry or MISS.
+     */
+    private final long[] _table;
+
+    /**
+     * The number of buckets minus 1.
+     */
+    private final int _bucketMask;
+
+    /**
+     * Requested size in megabytes.
+     */
+    private final int _megabytes;
+
+    /**
+     * The age of the current search, modulo 2**AGE_BITS.
+     */
+    private volatile int _age;
+
+    /**
+     * Counts of probes, hits, and cutoffs.
+     */
+    private final LongAdder _probes = new LongAdder(),
+        _hits = new LongAdder(), _cutoffs = new LongAdder();
+}
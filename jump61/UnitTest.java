@@ -16,7 +16,11 @@ public class UnitTest {
      * the arguments of runClasses to run other JUnit tests.
      */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(jump61.BoardTest.class));
+        System.exit(textui.runClasses(jump61.BoardTest.class,
+                                        jump61.BitBoardTest.class,
+                                        jump61.BoardEngineTest.class,
+                                        jump61.BoardBatchTest.class,
+                                        jump61.AITest.class));
     }
 
 }
@@ -9,4 +9,12 @@ interface View {
     /** Update the current view of the game according to BOARD. */
     void update(Board board);
 
+    /** Update the current view of the game according to BOARD, which has
+     *  just been changed by the move recorded in DELTA.  By default, the
+     *  same as update(BOARD); views may instead redraw only the squares
+     *  in DELTA. */
+    default void update(Board board, MoveDelta delta) {
+        update(board);
+    }
+
 }
@@ -0,0 +1,571 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static jump61.Square.CELL_MASK;
+import static jump61.Square.pack;
+import static jump61.Square.sideOrdinalOf;
+import static jump61.Square.spotsOf;
+
+/**
+ * A parallel engine for the large cascades of Board.jump.
+ * <p>
+ * Board.jump processes overfull squares one at a time from a FIFO queue.
+ * Consider the contents of that queue at some moment as a wave whose
+ * members are ranked by their queue positions.  Board.jump will process
+ * each member in rank order (jumping once), and will append to the queue
+ * each square that becomes overfull while not queued.  Those appended
+ * squares form the next wave.
+ * <p>
+ * The effect of a wave on any one square depends only on the events that
+ * touch it: its own jump, if it is a member, and one added spot from
+ * each member among its neighbors, each occurring at the rank of the
+ * member responsible.  So each square can replay its own (at most five)
+ * events in rank order, independently of all other squares, finding its
+ * final contents and whether, and by which event, it is appended to the
+ * queue.  Sorting the appended squares by those events gives the next
+ * wave in exactly the order Board.jump would produce it.  The only other
+ * subtlety is that Board.jump stops when the moving player owns every
+ * square; when that happens within a wave, its rank is found first and
+ * later events are ignored.  The results are therefore identical to
+ * Board.jump's.
+ * <p>
+ * The members of a wave are divided into chunks that are simulated by
+ * tasks in the common ForkJoinPool.  Each square is simulated by the
+ * chunk holding the lowest-ranked member among the square itself and
+ * its neighbors, so no two tasks write the same square.
+ *
+ * @author Bernie Miao
+ */
+final class WaveCascade {
+
+    /**
+     * The smallest queue for which Board switches to parallel waves by
+     * default on boards too large for tabled Geometries.
+     */
+    static final int DEFAULT_THRESHOLD = 4096;
+
+    /**
+     * The smallest parallelism of the common ForkJoinPool for which
+     * Board uses parallel waves by default.  On one thread, a wave
+     * costs about one and a half times as much as Board.jump's
+     * sequential processing.
+     */
+    static final int MIN_PARALLELISM = 3;
+
+    /**
+     * The number of wave members simulated by each task.
+     */
+    private static final int CHUNK = 1024;
+
+    /**
+     * Marks a square that is not a member of the current wave in _rank.
+     * It exceeds all ranks.
+     */
+    private static final int NOT_QUEUED = Integer.MAX_VALUE;
+
+    /**
+     * Event code (low 3 bits of an event) for a member's own jump.
+     * Codes 0 .. 3 denote a spot added by the neighbor for which the
+     * square is neighbor #code.
+     */
+    private static final int JUMP = 4;
+
+    /**
+     * A cascade engine for boards with the neighbor structure GEOMETRY.
+     */
+    WaveCascade(Geometry geometry) {
+        _geometry = geometry;
+        _size = geometry.size();
+        _rank = new int[_size * _size];
+        Arrays.fill(_rank, NOT_QUEUED);
+        _wave = new int[CHUNK];
+        _chunks = new Chunk[0];
+    }
+
+    /**
+     * Return the size of the boards I handle.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Make the current wave empty.
+     */
+    void clear() {
+        for (int i = 0; i < _waveLength; i += 1) {
+            _rank[_wave[i]] = NOT_QUEUED;
+        }
+        _waveLength = 0;
+    }
+
+    /**
+     * Add square #N to the end of the current wave.
+     */
+    void add(int n) {
+        if (_waveLength == _wave.length) {
+            _wave = Arrays.copyOf(_wave, 2 * _waveLength);
+        }
+        _rank[n] = _waveLength;
+        _wave[_waveLength] = n;
+        _waveLength += 1;
+    }
+
+    /**
+     * Return the number of squares in the current wave.
+     */
+    int length() {
+        return _waveLength;
+    }
+
+    /**
+     * Return the square of rank I in the current wave.
+     */
+    int square(int i) {
+        return _wave[i];
+    }
+
+    /**
+     * Process the current wave of a cascade by PLAYER on the packed
+     * squares CELLS, of which OWNED currently belong to PLAYER, replacing
+     * it with the next wave.  The changes to CELLS are made in place;
+     * those to other quantities are left in the accumulators below, and
+     * each changed square is recorded with its original contents (see
+     * change).  Returns true iff PLAYER has won, in which case the next
+     * wave is empty.
+     */
+    boolean step(byte[] cells, Side player, int owned) {
+        int chunks = (_waveLength + CHUNK - 1) / CHUNK;
+        if (_chunks.length < chunks) {
+            Chunk[] all = Arrays.copyOf(_chunks, chunks);
+            for (int k = _chunks.length; k < chunks; k += 1) {
+                all[k] = new Chunk();
+            }
+            _chunks = all;
+        }
+        _cells = cells;
+        _player = player;
+
+        int cutoff = Integer.MAX_VALUE;
+        int unowned = _size * _size - owned;
+        if (unowned <= Geometry.MAX_NEIGHBORS * _waveLength) {
+            run(chunks, true, cutoff);
+            int touched = 0, last = 0;
+            for (int k = 0; k < chunks; k += 1) {
+                touched += _chunks[k]._touched;
+                last = Math.max(last, _chunks[k]._lastTouch);
+            }
+            if (touched == unowned) {
+                cutoff = last;
+            }
+        }
+        run(chunks, false, cutoff);
+
+        Arrays.fill(_keyDeltas, 0);
+        Arrays.fill(_sideDeltas, 0);
+        _pieceDelta = _jumps = 0;
+        int nextLength = 0;
+        for (int k = 0; k < chunks; k += 1) {
+            Chunk chunk = _chunks[k];
+            for (int t = 0; t < _keyDeltas.length; t += 1) {
+                _keyDeltas[t] ^= chunk._keyDeltas[t];
+            }
+            for (int s = 0; s < _sideDeltas.length; s += 1) {
+                _sideDeltas[s] += chunk._sideDeltas[s];
+            }
+            _pieceDelta += chunk._pieceDelta;
+            _jumps += chunk._jumps;
+            nextLength += chunk._nextLength;
+        }
+        clear();
+        _cells = null;
+        if (cutoff != Integer.MAX_VALUE) {
+            return true;
+        }
+        long[] next = new long[nextLength];
+        nextLength = 0;
+        for (int k = 0; k < chunks; k += 1) {
+            Chunk chunk = _chunks[k];
+            System.arraycopy(chunk._next, 0, next, nextLength,
+                             chunk._nextLength);
+            nextLength += chunk._nextLength;
+        }
+        Arrays.parallelSort(next);
+        for (long entry : next) {
+            add((int) entry);
+        }
+        return false;
+    }
+
+    /**
+     * Return the number of squares changed by the last step on chunk
+     * #K.
+     */
+    int changes(int k) {
+        return _chunks[k]._changedLength;
+    }
+
+    /**
+     * Return the Ith change made by the last step on chunk #K, packed
+     * as (square number << 8) | original contents.
+     */
+    int change(int k, int i) {
+        return _chunks[k]._changed[i];
+    }
+
+    /**
+     * Return the number of chunks used by the last step.
+     */
+    int chunks() {
+        return _lastChunks;
+    }
+
+    /**
+     * Return the change in the Zobrist key for symmetry #T (see
+     * Board.symmetricKey) made by the last step.
+     */
+    long keyDelta(int t) {
+        return _keyDeltas[t];
+    }
+
+    /**
+     * Return the change in the number of squares of SIDE made by the
+     * last step.
+     */
+    int sideDelta(Side side) {
+        return _sideDeltas[side.ordinal()];
+    }
+
+    /**
+     * Return the change in the total number of spots made by the last
+     * step.
+     */
+    int pieceDelta() {
+        return _pieceDelta;
+    }
+
+    /**
+     * Return the number of squares that jumped in the last step.
+     */
+    int jumps() {
+        return _jumps;
+    }
+
+    /**
+     * Simulate the current wave in CHUNKS chunks, in parallel if
+     * worthwhile.  If COUNTING, only count the touches of squares not
+     * owned by _player; otherwise, apply all events of rank <= CUTOFF.
+     */
+    private void run(int chunks, boolean counting, int cutoff) {
+        _lastChunks = chunks;
+        if (chunks == 1) {
+            simulate(0, counting, cutoff);
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                new Chunks(0, chunks, counting, cutoff));
+        }
+    }
+
+    /**
+     * Simulate chunk #K of the current wave.  If COUNTING, only count the
+     * touches of squares not owned by _player; otherwise, apply all
+     * events of rank <= CUTOFF.
+     */
+    private void simulate(int k, boolean counting, int cutoff) {
+        Chunk chunk = _chunks[k];
+        chunk.reset();
+        int lo = k * CHUNK, hi = Math.min(lo + CHUNK, _waveLength);
+        int N = _size;
+        for (int i = lo; i < hi; i += 1) {
+            int s = _wave[i];
+            int r = s / N, c = s - r * N;
+            visit(chunk, s, r, c, i, counting, cutoff);
+            if (r + 1 < N) {
+                visit(chunk, s + N, r + 1, c, i, counting, cutoff);
+            }
+            if (r > 0) {
+                visit(chunk, s - N, r - 1, c, i, counting, cutoff);
+            }
+            if (c + 1 < N) {
+                visit(chunk, s + 1, r, c + 1, i, counting, cutoff);
+            }
+            if (c > 0) {
+                visit(chunk, s - 1, r, c - 1, i, counting, cutoff);
+            }
+        }
+    }
+
+    /**
+     * Simulate square #X, at row R and column C (numbered from 0), in
+     * CHUNK if it is owned by the wave member of rank I (as described in
+     * the class comment).  COUNTING and CUTOFF are as for simulate.
+     */
+    private void visit(Chunk chunk, int x, int r, int c, int i,
+                       boolean counting, int cutoff) {
+        int N = _size;
+        int own = _rank[x];
+        int below = r + 1 < N ? _rank[x + N] : NOT_QUEUED;
+        int above = r > 0 ? _rank[x - N] : NOT_QUEUED;
+        int right = c + 1 < N ? _rank[x + 1] : NOT_QUEUED;
+        int left = c > 0 ? _rank[x - 1] : NOT_QUEUED;
+        if (Math.min(Math.min(own, below), Math.min(Math.min(above, right),
+                                                    left)) != i) {
+            return;
+        }
+        int[] events = chunk._events;
+        int numEvents = 0;
+        if (own != NOT_QUEUED) {
+            events[numEvents++] = (own << 3) | JUMP;
+        }
+        if (below != NOT_QUEUED) {
+            events[numEvents++] = (below << 3) | (r + 2 < N ? 1 : 0);
+        }
+        if (above != NOT_QUEUED) {
+            events[numEvents++] = above << 3;
+        }
+        if (right != NOT_QUEUED) {
+            events[numEvents++] = (right << 3)
+                | ((r + 1 < N ? 1 : 0) + (r > 0 ? 1 : 0)
+                   + (c + 2 < N ? 1 : 0));
+        }
+        if (left != NOT_QUEUED) {
+            events[numEvents++] = (left << 3)
+                | ((r + 1 < N ? 1 : 0) + (r > 0 ? 1 : 0));
+        }
+        for (int a = 1; a < numEvents; a += 1) {
+            int e = events[a], b;
+            for (b = a; b > 0 && events[b - 1] > e; b -= 1) {
+                events[b] = events[b - 1];
+            }
+            events[b] = e;
+        }
+
+        int old = _cells[x] & CELL_MASK;
+        if (counting) {
+            if (sideOrdinalOf(old) != _player.ordinal()) {
+                chunk._touched += 1;
+                chunk._lastTouch = Math.max(chunk._lastTouch,
+                                            events[0] >>> 3);
+            }
+            return;
+        }
+
+        int capacity = _geometry.neighbors(x);
+        int spots = spotsOf(old);
+        boolean queued = own != NOT_QUEUED;
+        boolean changed = false;
+        for (int a = 0; a < numEvents && events[a] >>> 3 <= cutoff; a += 1) {
+            int e = events[a];
+            changed = true;
+            if ((e & JUMP) != 0) {
+                spots -= capacity;
+                chunk._jumps += 1;
+                queued = false;
+            } else {
+                spots += 1;
+                if (spots > capacity && !queued) {
+                    queued = true;
+                    long trigger = ((long) (e >>> 3) << 2) | (e & 3);
+                    chunk.append((trigger << Integer.SIZE) | x);
+                }
+            }
+        }
+        if (changed) {
+            int cell = pack(_player, spots);
+            _cells[x] = (byte) cell;
+            chunk.record(x, old, cell);
+        }
+    }
+
+    /**
+     * A task simulating a range of chunks, dividing it among subtasks.
+     */
+    private final class Chunks extends RecursiveAction {
+
+        /**
+         * A task simulating chunks LO .. HI-1.  COUNTING and CUTOFF are
+         * as for simulate.
+         */
+        Chunks(int lo, int hi, boolean counting, int cutoff) {
+            _lo = lo;
+            _hi = hi;
+            _counting = counting;
+            _cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                simulate(_lo, _counting, _cutoff);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Chunks(_lo, mid, _counting, _cutoff),
+                          new Chunks(mid, _hi, _counting, _cutoff));
+            }
+        }
+
+        /**
+         * The range of chunks simulated.
+         */
+        private final int _lo, _hi;
+        /**
+         * Parameters as for simulate.
+         */
+        private final boolean _counting;
+        /**
+         * Parameters as for simulate.
+         */
+        private final int _cutoff;
+    }
+
+    /**
+     * The results of simulating one chunk of a wave.
+     */
+    private final class Chunk {
+
+        /**
+         * Clear my accumulators.
+         */
+        void reset() {
+            _touched = _lastTouch = 0;
+            _nextLength = _changedLength = 0;
+            _pieceDelta = _jumps = 0;
+            Arrays.fill(_keyDeltas, 0);
+            Arrays.fill(_sideDeltas, 0);
+        }
+
+        /**
+         * Add ENTRY, (trigger << 32) | square number, to my part of the
+         * next wave.
+         */
+        void append(long entry) {
+            if (_nextLength == _next.length) {
+                _next = Arrays.copyOf(_next, 2 * _nextLength);
+            }
+            _next[_nextLength] = entry;
+            _nextLength += 1;
+        }
+
+        /**
+         * Account for the change of square #X from OLD to CELL.
+         */
+        void record(int x, int old, int cell) {
+            _pieceDelta += spotsOf(cell) - spotsOf(old);
+            _sideDeltas[sideOrdinalOf(old)] -= 1;
+            _sideDeltas[sideOrdinalOf(cell)] += 1;
+            if (_geometry.tabled()) {
+                for (int t = 0; t < _keyDeltas.length; t += 1) {
+                    int image = _geometry.symmetric(t, x);
+                    _keyDeltas[t] ^= _geometry.zobrist(image, old)
+                        ^ _geometry.zobrist(image, cell);
+                }
+            } else {
+                _keyDeltas[0] ^= Zobrist.key(x, old) ^ Zobrist.key(x, cell);
+            }
+            if (_changedLength == _changed.length) {
+                _changed = Arrays.copyOf(_changed, 2 * _changedLength);
+            }
+            _changed[_changedLength] = (x << 8) | old;
+            _changedLength += 1;
+        }
+
+        /**
+         * Scratch space for the events of one square.
+         */
+        private final int[] _events = new int[Geometry.MAX_NEIGHBORS + 1];
+        /**
+         * The number of squares not owned by the player touched, and the
+         * largest rank at which one was first touched.
+         */
+        private int _touched, _lastTouch;
+        /**
+         * Entries of the next wave found by this chunk.
+         */
+        private long[] _next = new long[CHUNK];
+        /**
+         * Number of entries in _next.
+         */
+        private int _nextLength;
+        /**
+         * Changed squares, (square << 8) | original contents.
+         */
+        private int[] _changed = new int[CHUNK];
+        /**
+         * Number of entries in _changed.
+         */
+        private int _changedLength;
+        /**
+         * Change in the total number of spots.
+         */
+        private int _pieceDelta;
+        /**
+         * The number of squares that jumped.
+         */
+        private int _jumps;
+        /**
+         * Changes in the Zobrist keys for each symmetry.
+         */
+        private final long[] _keyDeltas = new long[Geometry.SYMMETRIES];
+        /**
+         * Changes in the number of squares of each side.
+         */
+        private final int[] _sideDeltas = new int[Side.values().length];
+    }
+
+    /**
+     * The neighbor structure of my boards.
+     */
+    private final Geometry _geometry;
+    /**
+     * The number of rows and of columns of my boards.
+     */
+    private final int _size;
+    /**
+     * _rank[N] is the rank of square #N in the current wave, or
+     * NOT_QUEUED.
+     */
+    private final int[] _rank;
+    /**
+     * The squares of the current wave in rank order.
+     */
+    private int[] _wave;
+    /**
+     * The number of squares in the current wave.
+     */
+    private int _waveLength;
+    /**
+     * Per-chunk results, reused from wave to wave.
+     */
+    private Chunk[] _chunks;
+    /**
+     * The number of chunks used by the last step.
+     */
+    private int _lastChunks;
+    /**
+     * The parameters of the current step.
+     */
+    private byte[] _cells;
+    /**
+     * The player whose cascade this is.
+     */
+    private Side _player;
+    /**
+     * Totals of the chunk accumulators for the last step.
+     */
+    private final long[] _keyDeltas = new long[Geometry.SYMMETRIES];
+    /**
+     * Totals of the chunk accumulators for the last step.
+     */
+    private final int[] _sideDeltas = new int[Side.values().length];
+    /**
+     * Totals of the chunk accumulators for the last step.
+     */
+    private int _pieceDelta;
+    /**
+     * Totals of the chunk accumulators for the last step.
+     */
+    private int _jumps;
+}
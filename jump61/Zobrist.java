@@ -0,0 +1,48 @@
+package jump61;
+
+/**
+ * Zobrist hashing of Jump61 positions.  Each possible (square, contents)
+ * pair has a pseudo-random 64-bit key, and the key of a position is the
+ * exclusive or of the keys of its squares, so that it can be updated in
+ * constant time whenever a square changes.  Squares in their initial
+ * state contribute nothing, so that an empty board of any size has key 0.
+ * Keys are computed from a fixed mixing function rather than a table, so
+ * they are the same in every run and need no storage for large boards.
+ *
+ * @author Bernie Miao
+ */
+final class Zobrist {
+
+    /**
+     * Not instantiable.
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * Return the key of square #N with packed contents CELL (see
+     * Square.pack).
+     */
+    static long key(int n, int cell) {
+        if (cell == Square.INITIAL_CELL) {
+            return 0;
+        }
+        return mix(((long) n << Byte.SIZE) | cell);
+    }
+
+    /**
+     * Return a well-mixed 64-bit function of X (the finalizer of the
+     * SplitMix64 generator).
+     */
+    static long mix(long x) {
+        long z = x * GOLDEN_GAMMA + GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Increment used by SplitMix64.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+}